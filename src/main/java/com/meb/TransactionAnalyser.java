@@ -1,16 +1,39 @@
 package com.meb;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
+import com.meb.engine.AccountReport;
+import com.meb.engine.BalanceAccumulator;
+import com.meb.engine.BalanceCalculator;
+import com.meb.engine.BatchQueryProcessor;
+import com.meb.metrics.Metrics;
+import com.meb.server.QueryServer;
+import com.meb.sink.AsyncResultSink;
+import com.meb.sink.ConsoleResultSink;
+import com.meb.sink.ResultSink;
+import com.meb.store.AccountIndex;
+import com.meb.store.BalanceCube;
+import com.meb.store.LiveBalances;
+import com.meb.store.TransactionStore;
 import com.meb.util.InputIngester;
+import com.meb.util.MalformedRowException;
+import com.meb.util.PartitionedDataset;
+import com.meb.util.Quarantine;
+import com.meb.util.TailFollower;
+import com.meb.util.ChunkedFileReader;
+import com.meb.util.DecompressingInputStream;
 import com.meb.util.ValidatorUtil;
-import com.meb.vo.TransactionRecord;
-import com.meb.vo.TransactionRecord.TransactionType;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.DateRange;
+import com.meb.vo.QueryResult;
 
 /**
  * The main transaction analyser class used to find the relative balance of a given account
@@ -21,15 +44,110 @@ import com.meb.vo.TransactionRecord.TransactionType;
  */
 public class TransactionAnalyser {
 
+    /** Port the query server listens on when none is given */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** Milliseconds between two polls of a followed transaction file */
+    public static final long FOLLOW_INTERVAL = 1000;
+
+    private final int threads;
+    private final ResultSink sink;
+
     /**
-     * Main method
+     * Creates an analyser which reads the transaction file with one thread per available processor
+     * and prints the results to the console
+     * 
+     */
+    public TransactionAnalyser() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads - number of threads used to read the transaction file
+     */
+    public TransactionAnalyser(int threads) {
+        this(threads, new ConsoleResultSink());
+    }
+
+    /**
+     * @param threads - number of threads used to read the transaction file
+     * @param sink - receives the results of single queries
+     */
+    public TransactionAnalyser(int threads, ResultSink sink) {
+        this.threads = threads;
+        this.sink = sink;
+    }
+
+    /**
+     * Main method. With the arguments "transactions.csv batch queries.csv results.csv" the queries in
+     * the query file are answered in one go, with "transactions.csv serve [port]" the transactions are
+     * loaded once and queries are answered over HTTP, with "transactions.csv follow [port]" the same is done
+     * while the lines appended to the file are ingested, with "transactions.csv snapshot" a binary snapshot
+     * which speeds up later loads is written, with "transactions.csv report fromDate toDate report.csv" the balances
+     * of every account are written to the report file, otherwise a single query is read from the console.
+     * Serve and follow modes listen on the loopback interface only and switch TCP_NODELAY on for the JDK's HTTP
+     * server, see {@link QueryServer}, unless -Dsun.net.httpserver.nodelay is given.
+     * With -Dmeb.metrics=true the counters of the run are exposed over JMX and printed as JSON on stderr at exit.
+     * With -Dmeb.quarantine=rejects.csv malformed rows are written to the given file instead of failing the run.
+     * With -Dmeb.cube=true batch and serve modes answer from hourly and daily buckets, see {@link BalanceCube}.
+     * Batch results are written as JSON lines when the result file name ends with .jsonl
      * 
      */
     public static void main(String[] args) {
+        if (Metrics.ENABLED) {
+            Metrics.get().register();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(Metrics.get().toJson())));
+        }
+        try {
+            run(args);
+        } catch (ArithmeticException e) {
+            System.out.println("Amounts are too large to be summed exactly. Aborting...");
+        } catch (MalformedRowException | IllegalStateException e) {
+            System.out.println(e.getMessage() + ". Aborting...");
+        }
+        Quarantine quarantine = Quarantine.getDefault();
+        if (quarantine.getErrors() > 0) {
+            System.out.println("Number of malformed rows written to " + quarantine.getFileName() + " is: " + quarantine.getErrors());
+        }
+    }
+
+    private static void run(String[] args) {
         if (args.length == 0 || args[0].isEmpty()) {
             System.out.println("Input transaction file name not provided. Aborting...");
             return;
         }
+        if (args.length > 1 && "batch".equalsIgnoreCase(args[1])) {
+            if (args.length < 4) {
+                System.out.println("Usage: <transaction file> batch <query file> <result file>. Aborting...");
+                return;
+            }
+            new TransactionAnalyser().analyseBatch(args[2], args[3], args[0]);
+            return;
+        }
+        if (args.length > 1 && "report".equalsIgnoreCase(args[1])) {
+            if (args.length < 5) {
+                System.out.println("Usage: <transaction file> report <from date> <to date> <report file>. Aborting...");
+                return;
+            }
+            new TransactionAnalyser().report(args[2], args[3], args[4], args[0]);
+            return;
+        }
+        if (args.length > 1 && "snapshot".equalsIgnoreCase(args[1])) {
+            new TransactionAnalyser().snapshot(args[0]);
+            return;
+        }
+        if (args.length > 1 && ("follow".equalsIgnoreCase(args[1]) || "serve".equalsIgnoreCase(args[1])) &&
+                System.getProperty(QueryServer.NODELAY_PROPERTY) == null) {
+            System.setProperty(QueryServer.NODELAY_PROPERTY, "true");
+        }
+        if (args.length > 1 && "follow".equalsIgnoreCase(args[1])) {
+            new TransactionAnalyser().follow(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT, args[0]);
+            return;
+        }
+        if (args.length > 1 && "serve".equalsIgnoreCase(args[1])) {
+            new TransactionAnalyser().serve(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT, args[0]);
+            return;
+        }
 
         // get the inputs
         String accountId, fromDate, toDate;
@@ -52,141 +170,319 @@ public class TransactionAnalyser {
      * @param accountId - Account id for which relative balance should be calculated
      * @param fromDate - start date of the transaction range
      * @param toDate - end date of the transaction range
-     * @param fileName - file which contains the transaction records
+     * @param fileName - file which contains the transaction records, or a directory or glob of partition files
+     * @return - the result published to the sink, null if the query could not be answered
      * 
      */
-    public void analyseTransactions(String accountId, String fromDate, String toDate, String fileName) {
+    public QueryResult analyseTransactions(String accountId, String fromDate, String toDate, String fileName) {
         // validate the inputs
         if (!ValidatorUtil.validateInputFile(fileName)) {
             System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
-            return;
+            return null;
         }
-        if (!ValidatorUtil.validateInputs(accountId, fromDate, toDate)) {
+        DateRange range = ValidatorUtil.validateInputs(accountId, fromDate, toDate);
+        if (range == null) {
             System.out.println("Aborting...");
-            return;
+            return null;
         }
         
         // calculate the account balance
-        calculateAccountBalance(accountId, fromDate, toDate, fileName);
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        QueryResult result = calculateAccountBalance(accountId, fromDate, toDate, range, fileName);
+        if (Metrics.ENABLED) {
+            Metrics.get().recordQuery(System.nanoTime() - started);
+        }
+        return result;
     }
 
     /**
-     * Reads the transaction records and calculates the account balance
+     * Reads the transaction records and calculates the account balance.
+     * The balance is folded as the lines are read, so the records are never held in memory together.
+     * Partitions which end before the range are skipped, the others are read in parallel.
+     * A single csv file with a snapshot newer than it is answered with a scan of the snapshot instead
      * 
      * @param accountId - Account id for which relative balance should be calculated
      * @param fromDate - start date of the transaction range
      * @param toDate - end date of the transaction range
+     * @param range - the transaction range parsed from the dates
      * @param fileName - file which contains the transaction records
      * 
      */
-    private void calculateAccountBalance(String accountId, String fromDate, String toDate, String fileName) {
-        // read the transactions file 
-        List<TransactionRecord> txns = InputIngester.readTransactions(fileName);
-        if (txns.isEmpty()) {
+    private QueryResult calculateAccountBalance(String accountId, String fromDate, String toDate, DateRange range,
+                                                String fileName) {
+        // set inputs
+        long from = range.getFrom();
+        long to = range.getTo();
+
+        List<Path> partitions = PartitionedDataset.resolve(fileName);
+        List<Path> kept = PartitionedDataset.prune(partitions, from);
+        if (kept.isEmpty() && !partitions.isEmpty()) {
+            // no partition can hold a payment in range
+            return publish(accountId, fromDate, toDate, new BalanceResult(0, 0));
+        }
+
+        try {
+            // loading the columns of a snapshot is cheaper than parsing the csv
+            TransactionStore snapshot = PartitionedDataset.isDataset(fileName) ? null : InputIngester.readSnapshot(fileName);
+            if (snapshot != null) {
+                if (snapshot.size() == 0) {
+                    System.out.println("No records in the input file. Aborting...");
+                    return null;
+                }
+                return publish(accountId, fromDate, toDate, snapshot.calculateBalance(accountId, from, to));
+            }
+
+            // read the transactions files in parallel chunks and calculate incoming and outgoing balances in a single pass
+            BalanceAccumulator balance = new ChunkedFileReader(threads).read(kept,
+                                                                             () -> new BalanceAccumulator(accountId, from, to),
+                                                                             BalanceAccumulator::merge);
+            if (balance.getRecordsSize() == 0) {
+                System.out.println("No records in the input file. Aborting...");
+                return null;
+            }
+
+            // calculate the relative balance and the transactions count
+            return publish(accountId, fromDate, toDate, new BalanceResult(balance.getRelativeBalance(), balance.getTxnsSize()));
+        } catch (ArithmeticException e) {
+            System.out.println("Amounts are too large to be summed exactly. Aborting...");
+        } catch (MalformedRowException | IllegalStateException e) {
+            System.out.println(e.getMessage() + ". Aborting...");
+        }
+        return null;
+    }
+
+    /**
+     * Validates the inputs and calculates the account balance from transactions which are already loaded
+     * 
+     * @param accountId - Account id for which relative balance should be calculated
+     * @param fromDate - start date of the transaction range
+     * @param toDate - end date of the transaction range
+     * @param store - the loaded transaction records, e.g. a {@link com.meb.store.TransactionStore}
+     * @return - the result published to the sink, null if the query could not be answered
+     * 
+     */
+    public QueryResult analyseTransactions(String accountId, String fromDate, String toDate, BalanceCalculator store) {
+        DateRange range = ValidatorUtil.validateInputs(accountId, fromDate, toDate);
+        if (range == null) {
+            System.out.println("Aborting...");
+            return null;
+        }
+        if (store.size() == 0) {
             System.out.println("No records in the input file. Aborting...");
+            return null;
+        }
+
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        BalanceResult balance = store.calculateBalance(accountId, range.getFrom(), range.getTo());
+        if (Metrics.ENABLED) {
+            Metrics.get().recordQuery(System.nanoTime() - started);
+        }
+        return publish(accountId, fromDate, toDate, balance);
+    }
+
+    /**
+     * Answers every query of a query file with a single load of the transaction file.
+     * The transactions are indexed per account, so each query costs a few binary searches.
+     * The results are written by a thread of their own, as csv or as JSON lines, see {@link ResultSink#open(Path)}
+     * 
+     * @param queryFile - csv file of account id, from date and to date
+     * @param resultFile - csv file the results are written to
+     * @param fileName - file which contains the transaction records
+     * 
+     */
+    public void analyseBatch(String queryFile, String resultFile, String fileName) {
+        if (!ValidatorUtil.validateInputFile(fileName)) {
+            System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
+            return;
+        }
+        if (!ValidatorUtil.validateInputFile(queryFile)) {
+            System.out.println("Either query file does not exist or is not in CSV format. Aborting...");
             return;
         }
 
-        // set inputs
-        DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-        LocalDateTime from = LocalDateTime.parse(fromDate, df);
-        LocalDateTime to = LocalDateTime.parse(toDate, df);
+        BalanceCalculator index = loadIndex(fileName);
+        if (index.size() == 0) {
+            System.out.println("No records in the input file. Aborting...");
+            return;
+        }
+        try (ResultSink results = new AsyncResultSink(ResultSink.open(Paths.get(resultFile)))) {
+            int answered = new BatchQueryProcessor(index).process(queryFile, results);
+            System.out.println("\nNumber of queries answered is: " + answered);
+        } catch (IOException e) {
+            System.out.println("Error while writing result file : " + e.getMessage());
+        }
+    }
 
-        // calculate incoming and outgoing balances
-        BalanceTuple outBalance = calculateOutgoingBalance(accountId, from, to, txns);
-        BalanceTuple inBalance = calculateIncomingBalance(accountId, from, to, txns);
-        
-        // calculate the relative balance and the transactions count
-        Double relativeBalance = inBalance.getBalance() - outBalance.getBalance();
-        int txnsSize = inBalance.getTxnsSize() + outBalance.getTxnsSize();
+    /**
+     * Loads the transaction file and answers balance queries over HTTP until the JVM is stopped.
+     * See {@link QueryServer} for the query format
+     * 
+     * @param port - port to listen on
+     * @param fileName - file which contains the transaction records
+     * @return - the running server, null if it could not be started
+     * 
+     */
+    public QueryServer serve(int port, String fileName) {
+        if (!ValidatorUtil.validateInputFile(fileName)) {
+            System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
+            return null;
+        }
 
-        String sign = relativeBalance < 0 ? "-" : "";
-        System.out.println(String.format("\nRelative balance for the period is: " + sign + "$%.2f", Math.abs(relativeBalance)));
-        System.out.println("Number of transactions included is: " + txnsSize);
+        BalanceCalculator index = loadIndex(fileName);
+        try {
+            QueryServer server = new QueryServer(index, port, threads);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.out.println("Serving " + index.size() + " transactions on http://localhost:" + server.getPort() +
+                               QueryServer.BALANCE_PATH);
+            return server;
+        } catch (IOException e) {
+            System.out.println("Error while starting the server : " + e.getMessage());
+            return null;
+        }
     }
 
     /**
-     * Calculates the outgoing balance of the account
+     * Writes the incoming, outgoing and relative balance and the transactions count of every account, summed
+     * over parallel chunks of the transaction files without loading them
      * 
-     * @param accountId - Account id for which relative balance should be calculated
-     * @param from - start date of the transaction range
-     * @param to - end date of the transaction range
-     * @param txns - list of transactions read from the input transaction file
-     * @return - object containing the balance and the no of transactions considered
+     * @param fromDate - start date of the transaction range
+     * @param toDate - end date of the transaction range
+     * @param reportFile - csv file the report is written to
+     * @param fileName - file which contains the transaction records
      * 
      */
-    private BalanceTuple calculateOutgoingBalance(String accountId, LocalDateTime from, 
-                                                         LocalDateTime to, List<TransactionRecord> txns) {
-        // get the list of reversal transactions for the given account and store their original transactions
-        Set<String> origTxns = txns.stream()
-                                   .filter(rec -> rec.getFromAccountId().toUpperCase().equals(accountId.toUpperCase()))
-                                   .filter(rec -> rec.getOrigTransactionid() != null)
-                                   .map(TransactionRecord::getOrigTransactionid)
-                                   .collect(Collectors.toSet());
-
-        // filter out the reversal transactions and transactions outside the date range
-        List<TransactionRecord> finalTxns = txns.stream()
-                                                .filter(rec -> rec.getFromAccountId().toUpperCase().equals(accountId.toUpperCase()))
-                                                .filter(rec -> !origTxns.contains(rec.getTransactionId().toUpperCase()))
-                                                .filter(rec -> rec.getCreatedAt().isAfter(from) && rec.getCreatedAt().isBefore(to) &&
-                                                               TransactionType.PAYMENT.equals(rec.getTxnType()))
-                                                .collect(Collectors.toList());
-
-        Double outBalance = finalTxns.stream()
-                                     .mapToDouble(rec -> rec.getAmount())
-                                     .sum();
-
-        return new BalanceTuple(outBalance, finalTxns.size());
+    public void report(String fromDate, String toDate, String reportFile, String fileName) {
+        if (!ValidatorUtil.validateInputFile(fileName)) {
+            System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
+            return;
+        }
+        DateRange range = ValidatorUtil.parseRange(fromDate, toDate);
+        if (!range.isValid()) {
+            System.out.println(range.getError());
+            System.out.println("Aborting...");
+            return;
+        }
+
+        AccountReport report = new AccountReport(threads);
+        try (Writer out = Files.newBufferedWriter(Paths.get(reportFile), Charset.defaultCharset())) {
+            int accounts = report.write(PartitionedDataset.resolve(fileName), range.getFrom(), range.getTo(), out);
+            if (report.getRecordsSize() == 0) {
+                System.out.println("No records in the input file. Aborting...");
+                return;
+            }
+            System.out.println("\nNumber of accounts reported is: " + accounts);
+            printOrphanReversals(report.getOrphanReversals());
+        } catch (ArithmeticException e) {
+            System.out.println("Amounts are too large to be summed exactly. Aborting...");
+        } catch (MalformedRowException | IllegalStateException e) {
+            System.out.println(e.getMessage() + ". Aborting...");
+        } catch (IOException e) {
+            System.out.println("Error while writing report file : " + e.getMessage());
+        }
     }
 
     /**
-     * Calculates the incoming balance of the account
+     * Writes a binary snapshot of the transaction file, which later runs load instead of parsing the csv
      * 
-     * @param accountId - Account id for which relative balance should be calculated
-     * @param from - start date of the transaction range
-     * @param to - end date of the transaction range
-     * @param txns - list of transactions read from the input transaction file
-     * @return - object containing the balance and the no of transactions considered
+     * @param fileName - file which contains the transaction records
      * 
      */
-    private BalanceTuple calculateIncomingBalance(String accountId, LocalDateTime from,
-                                                         LocalDateTime to, List<TransactionRecord> txns) {
-        // filter out the transactions and transactions outside the date range
-        List<TransactionRecord> finalTxns = txns.stream()
-                                                .filter(rec -> rec.getToAccountId().toUpperCase().equals(accountId.toUpperCase()))
-                                                .filter(rec -> rec.getCreatedAt().isAfter(from) && rec.getCreatedAt().isBefore(to) &&
-                                                               TransactionType.PAYMENT.equals(rec.getTxnType()))
-                                                .collect(Collectors.toList());
-
-        Double inBalance = finalTxns.stream()
-                                    .mapToDouble(rec -> rec.getAmount())
-                                    .sum();
-        
-        return new BalanceTuple(inBalance, finalTxns.size());
+    public void snapshot(String fileName) {
+        if (!ValidatorUtil.validateInputFile(fileName)) {
+            System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
+            return;
+        }
+        if (PartitionedDataset.isDataset(fileName)) {
+            System.out.println("Only a single transaction file can be snapshotted. Aborting...");
+            return;
+        }
+        try {
+            TransactionStore store = InputIngester.writeSnapshot(fileName);
+            System.out.println("Snapshot of " + store.size() + " transactions written to " + fileName + TransactionStore.FILE_SUFFIX);
+        } catch (IOException e) {
+            System.out.println("Error while writing snapshot file : " + e.getMessage());
+        }
     }
 
-    
     /**
-     * Inner class which is used to hold the result of balance calculation
+     * Ingests the transaction file and keeps ingesting the lines appended to it, while balance queries are
+     * answered over HTTP until the JVM is stopped. Reversals which arrive later cancel earlier payments
+     * 
+     * @param port - port to listen on
+     * @param fileName - file which contains the transaction records
+     * @return - the running server, null if it could not be started
      * 
-     * @author sundeep
-     *
      */
-    private class BalanceTuple {
-        private Double balance;
-        private int txnsSize;
-        
-        private BalanceTuple(Double balance, int txnSize) {
-            this.balance = balance;
-            this.txnsSize = txnSize;
+    public QueryServer follow(int port, String fileName) {
+        if (!ValidatorUtil.validateInputFile(fileName)) {
+            System.out.println("Either transaction file does not exist or is not in CSV format. Aborting...");
+            return null;
         }
-        
-        private Double getBalance() {
-            return balance;
+        if (PartitionedDataset.isDataset(fileName) || DecompressingInputStream.isCompressed(fileName)) {
+            System.out.println("Only a single uncompressed transaction file can be followed. Aborting...");
+            return null;
         }
-        
-        private int getTxnsSize() {
-            return txnsSize;
+
+        LiveBalances balances = new LiveBalances();
+        TailFollower follower = new TailFollower(fileName, balances);
+        try {
+            follower.poll();
+            QueryServer server = new QueryServer(balances, port, threads);
+            server.start();
+            follower.start(FOLLOW_INTERVAL, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                follower.stop();
+                server.stop();
+            }));
+            System.out.println("Following " + fileName + " from " + balances.size() + " transactions on http://localhost:" +
+                               server.getPort() + QueryServer.BALANCE_PATH);
+            return server;
+        } catch (IOException e) {
+            System.out.println("Error while starting to follow the input file : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads the calculator which answers the queries of batch and serve modes, the time bucketed
+     * {@link BalanceCube} over the {@link AccountIndex} with -Dmeb.cube=true and the index alone otherwise,
+     * and prints the number of reversals without their original transaction
+     * 
+     */
+    private BalanceCalculator loadIndex(String fileName) {
+        if (BalanceCube.ENABLED) {
+            BalanceCube cube = BalanceCube.build(InputIngester.loadIndex(fileName));
+            printOrphanReversals(cube.getOrphanReversals());
+            return cube;
+        }
+        AccountIndex index = InputIngester.loadIndex(fileName);
+        printOrphanReversals(index.getOrphanReversals());
+        return index;
+    }
+
+    /**
+     * Prints the number of reversals whose original transaction is missing, if there are any.
+     * They cancel nothing, which usually means the input is incomplete
+     * 
+     */
+    private void printOrphanReversals(int orphans) {
+        if (orphans > 0) {
+            System.out.println("Number of reversals without their original transaction is: " + orphans);
+        }
+    }
+
+    /**
+     * Publishes the result of a single query to the sink
+     * 
+     */
+    private QueryResult publish(String accountId, String fromDate, String toDate, BalanceResult balance) {
+        QueryResult result = new QueryResult(accountId, fromDate, toDate, balance);
+        try {
+            sink.publish(result);
+        } catch (IOException e) {
+            System.out.println("Error while writing result : " + e.getMessage());
         }
+        return result;
     }
 }
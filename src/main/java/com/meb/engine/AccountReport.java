@@ -0,0 +1,201 @@
+package com.meb.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.meb.store.IdDictionary;
+import com.meb.util.ChunkedFileReader;
+import com.meb.util.MoneyUtil;
+import com.meb.util.Quarantine;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Calculates the incoming, outgoing and relative balance and the transactions count of every account
+ * for one range, reading the transaction files in parallel chunks with a {@link ChunkedFileReader}.
+ *
+ * Every chunk is summed into its own {@link Totals}, primitive arrays indexed by the account codes of a
+ * dictionary of the chunk, so nothing is shared while summing, and the totals of the chunks are merged by
+ * account id at the end. Nothing is kept per row, so the memory held grows with the number of accounts and
+ * of reversals, not with the number of rows.
+ *
+ * A reversal may come before or after the payment it cancels, in any chunk, so the files are read twice:
+ * the first read collects the reversals, which are rare, and the second sums the payments which they do
+ * not cancel. Malformed rows are handled by the quarantine on the first read and skipped on the second.
+ *
+ * The same rules as {@link BalanceCalculator#calculateBalance} apply: only payments created in the range
+ * (exclusive) count, and payments reversed by their paying account are left out on both sides.
+ *
+ * @author sundeep
+ *
+ */
+public class AccountReport {
+
+    /** Header row of the report csv */
+    public static final String HEADER = "accountId, incoming, outgoing, relativeBalance, txnsSize";
+
+    private final ChunkedFileReader reversalsReader;
+    private final ChunkedFileReader paymentsReader;
+
+    private long recordsSize;
+    private int orphanReversals;
+
+    /**
+     * Creates a report which sizes the chunks from the file size and handles malformed rows with the
+     * default quarantine
+     *
+     * @param threads - number of threads summing chunks
+     */
+    public AccountReport(int threads) {
+        this(threads, 0, Quarantine.getDefault());
+    }
+
+    /**
+     * @param threads - number of threads summing chunks
+     * @param chunkSize - approximate bytes per chunk, 0 to size the chunks from the file size
+     * @param quarantine - handles the malformed rows
+     */
+    public AccountReport(int threads, long chunkSize, Quarantine quarantine) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads should be at least 1");
+        }
+        this.reversalsReader = new ChunkedFileReader(threads, chunkSize, quarantine);
+        this.paymentsReader = new ChunkedFileReader(threads, chunkSize, quarantine.forReread());
+    }
+
+    /**
+     * Sums the balances of every account and writes them as csv, in the order the accounts first
+     * appear in the transactions
+     *
+     * @param files - the input transaction files
+     * @param from - start of the transaction range in epoch seconds (exclusive)
+     * @param to - end of the transaction range in epoch seconds (exclusive)
+     * @param out - receives the report csv, lines ending with '\n' like the other csv outputs
+     * @return - number of accounts written
+     * @throws ArithmeticException - if a balance overflows a long
+     */
+    public int write(List<Path> files, long from, long to, Writer out) throws IOException {
+        Totals totals = calculate(files, from, to);
+        out.write(HEADER);
+        out.write('\n');
+        StringBuilder line = new StringBuilder();
+        int accounts = totals.accountIds.size();
+        for (int account = 0; account < accounts; account++) {
+            line.setLength(0);
+            line.append(totals.accountIds.get(account)).append(", ")
+                .append(MoneyUtil.toDecimal(totals.in[account]).toPlainString()).append(", ")
+                .append(MoneyUtil.toDecimal(totals.out[account]).toPlainString()).append(", ")
+                .append(MoneyUtil.toDecimal(Math.subtractExact(totals.in[account], totals.out[account])).toPlainString())
+                .append(", ").append(totals.txnsSize[account])
+                .append('\n');
+            out.append(line);
+        }
+        return accounts;
+    }
+
+    /**
+     * Returns the number of records read by the last report
+     *
+     */
+    public long getRecordsSize() {
+        return recordsSize;
+    }
+
+    /**
+     * Returns the number of reversals of the last report whose original transaction is not a payment of
+     * their paying account. Only the first reversal of a transaction is counted
+     *
+     */
+    public int getOrphanReversals() {
+        return orphanReversals;
+    }
+
+    /**
+     * Collects the reversals, then sums the balances of every account over the chunks in parallel
+     *
+     */
+    Totals calculate(List<Path> files, long from, long to) {
+        ReversalKeys reversals = reversalsReader.read(files, ReversalKeys::new, ReversalKeys::merge);
+        Totals totals = paymentsReader.read(files, () -> new Totals(reversals, from, to), Totals::merge);
+        recordsSize = reversals.getRecordsSize();
+        orphanReversals = reversals.size() - totals.matched.cardinality();
+        return totals;
+    }
+
+    /**
+     * Incoming and outgoing minor units and transactions counts indexed by the account codes of a chunk,
+     * and the reversals matched by a payment of the chunk
+     *
+     */
+    static class Totals implements Consumer<TransactionRecord> {
+        final IdDictionary accountIds = new IdDictionary();
+        long[] in = new long[16];
+        long[] out = new long[16];
+        int[] txnsSize = new int[16];
+        final BitSet matched = new BitSet();
+
+        // read only, shared by the chunks
+        private final ReversalKeys reversals;
+        private final long from;
+        private final long to;
+        private final StringBuilder key = new StringBuilder();
+
+        Totals(ReversalKeys reversals, long from, long to) {
+            this.reversals = reversals;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void accept(TransactionRecord rec) {
+            // every account is reported, whether it has payments in the range or not
+            int payer = account(rec.getFromAccountId());
+            int payee = account(rec.getToAccountId());
+            if (!TransactionType.PAYMENT.equals(rec.getTxnType())) {
+                return;
+            }
+            int reversal = reversals.find(key, rec.getFromAccountId(), rec.getTransactionId());
+            if (reversal != IdDictionary.NOT_FOUND) {
+                matched.set(reversal);
+                return;
+            }
+            long createdAt = rec.getCreatedAtEpochSecond();
+            if (createdAt == TimestampCodec.NONE || createdAt <= from || createdAt >= to) {
+                return;
+            }
+            long amount = rec.getAmountMinorUnits();
+            in[payee] = Math.addExact(in[payee], amount);
+            txnsSize[payee]++;
+            out[payer] = Math.addExact(out[payer], amount);
+            txnsSize[payer]++;
+        }
+
+        Totals merge(Totals other) {
+            for (int i = 0; i < other.accountIds.size(); i++) {
+                int account = account(other.accountIds.get(i));
+                in[account] = Math.addExact(in[account], other.in[i]);
+                out[account] = Math.addExact(out[account], other.out[i]);
+                txnsSize[account] += other.txnsSize[i];
+            }
+            matched.or(other.matched);
+            return this;
+        }
+
+        private int account(String accountId) {
+            int account = accountIds.code(accountId);
+            if (account == in.length) {
+                int capacity = in.length * 2;
+                in = Arrays.copyOf(in, capacity);
+                out = Arrays.copyOf(out, capacity);
+                txnsSize = Arrays.copyOf(txnsSize, capacity);
+            }
+            return account;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.meb.engine;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.meb.util.TimestampCodec;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Single pass balance engine for one account and one date range.
+ * Incoming balance, outgoing balance, reversal exclusion and the transaction count
+ * are all folded while the records are visited, so no intermediate lists are built.
+ *
+ * Reversals may appear before or after the payment they cancel, and cancel it for both
+ * the paying and the receiving account. To handle both, the in-range payments of the
+ * account are remembered by paying account and transaction id, as are the reversals
+ * of every account, and the payments which are not reversed are summed when the result
+ * is read. Reversals are rare, so remembering all of them costs little.
+ *
+ * Amounts are summed as long minor units, so the balance is exact, and an overflow
+ * raises an {@link ArithmeticException} rather than wrapping.
+ *
+ * @author sundeep
+ *
+ */
+public class BalanceAccumulator implements Consumer<TransactionRecord> {
+
+    private final String accountId;
+    private final long from;
+    private final long to;
+
+    private long recordsSize;
+
+    // in-range payments of the account keyed by upper case paying account and transaction id
+    private final Map<String, PendingPayment> outPayments = new HashMap<>();
+    private final Map<String, PendingPayment> inPayments = new HashMap<>();
+    // upper case paying accounts and original transaction ids of every reversal
+    private final Set<String> reversedTxns = new HashSet<>();
+
+    /**
+     * @param accountId - Account id for which relative balance should be calculated
+     * @param from - start date of the transaction range (exclusive)
+     * @param to - end date of the transaction range (exclusive)
+     */
+    public BalanceAccumulator(String accountId, LocalDateTime from, LocalDateTime to) {
+        this(accountId, TimestampCodec.toEpochSecond(from), TimestampCodec.toEpochSecond(to));
+    }
+
+    /**
+     * @param accountId - Account id for which relative balance should be calculated
+     * @param from - start of the transaction range in epoch seconds (exclusive)
+     * @param to - end of the transaction range in epoch seconds (exclusive)
+     */
+    public BalanceAccumulator(String accountId, long from, long to) {
+        this.accountId = accountId;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Folds a single transaction record into the balance
+     *
+     */
+    @Override
+    public void accept(TransactionRecord rec) {
+        recordsSize++;
+        if (rec.getOrigTransactionid() != null) {
+            reversedTxns.add(key(rec.getFromAccountId(), rec.getOrigTransactionid()));
+        }
+        boolean outgoing = accountId.equalsIgnoreCase(rec.getFromAccountId());
+        boolean incoming = accountId.equalsIgnoreCase(rec.getToAccountId());
+        if ((outgoing || incoming) && isPaymentInRange(rec)) {
+            String key = key(rec.getFromAccountId(), rec.getTransactionId());
+            if (outgoing) {
+                outPayments.computeIfAbsent(key, id -> new PendingPayment()).add(rec.getAmountMinorUnits());
+            }
+            if (incoming) {
+                inPayments.computeIfAbsent(key, id -> new PendingPayment()).add(rec.getAmountMinorUnits());
+            }
+        }
+    }
+
+    /**
+     * Adds the records folded by another accumulator for the same account and range.
+     * Used to combine the results of chunks which were read in parallel
+     *
+     * @param other - accumulator of another part of the file
+     * @return - this accumulator
+     */
+    public BalanceAccumulator merge(BalanceAccumulator other) {
+        recordsSize += other.recordsSize;
+        for (Map.Entry<String, PendingPayment> payment : other.outPayments.entrySet()) {
+            outPayments.merge(payment.getKey(), payment.getValue(), PendingPayment::merge);
+        }
+        for (Map.Entry<String, PendingPayment> payment : other.inPayments.entrySet()) {
+            inPayments.merge(payment.getKey(), payment.getValue(), PendingPayment::merge);
+        }
+        reversedTxns.addAll(other.reversedTxns);
+        return this;
+    }
+
+    /**
+     * Returns the number of records folded so far
+     *
+     */
+    public long getRecordsSize() {
+        return recordsSize;
+    }
+
+    /**
+     * Returns the relative balance (incoming - outgoing) of the records folded so far, in minor units
+     *
+     * @throws ArithmeticException - if the balance overflows a long
+     */
+    public long getRelativeBalance() {
+        return Math.subtractExact(sum(inPayments).amount, sum(outPayments).amount);
+    }
+
+    /**
+     * Returns the number of transactions included in the relative balance
+     *
+     */
+    public int getTxnsSize() {
+        return sum(inPayments).count + sum(outPayments).count;
+    }
+
+    /**
+     * Sums the payments which are not reversed
+     *
+     */
+    private PendingPayment sum(Map<String, PendingPayment> payments) {
+        PendingPayment total = new PendingPayment();
+        for (Map.Entry<String, PendingPayment> payment : payments.entrySet()) {
+            if (!reversedTxns.contains(payment.getKey())) {
+                total.merge(payment.getValue());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Key of a transaction of a paying account, case insensitive. Ids hold no comma, it separates the csv fields
+     *
+     */
+    private static String key(String payer, String txnId) {
+        return (payer + ',' + txnId).toUpperCase();
+    }
+
+    private boolean isPaymentInRange(TransactionRecord rec) {
+        long createdAt = rec.getCreatedAtEpochSecond();
+        return TransactionType.PAYMENT.equals(rec.getTxnType()) &&
+               createdAt != TimestampCodec.NONE && createdAt > from && createdAt < to;
+    }
+
+    /**
+     * Amount and count of the payments sharing one paying account and transaction id
+     *
+     */
+    private static class PendingPayment {
+        private long amount;
+        private int count;
+
+        private void add(long amount) {
+            this.amount = Math.addExact(this.amount, amount);
+            this.count++;
+        }
+
+        private PendingPayment merge(PendingPayment other) {
+            this.amount = Math.addExact(this.amount, other.amount);
+            this.count += other.count;
+            return this;
+        }
+    }
+}
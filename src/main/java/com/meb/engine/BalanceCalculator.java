@@ -0,0 +1,28 @@
+package com.meb.engine;
+
+import com.meb.vo.BalanceResult;
+
+/**
+ * Answers relative balance queries from transactions which are already loaded
+ * 
+ * @author sundeep
+ *
+ */
+public interface BalanceCalculator {
+
+    /**
+     * Calculates the relative balance of an account for the transactions created in the range (from, to)
+     * 
+     * @param accountId - Account id for which relative balance should be calculated
+     * @param from - start of the transaction range in epoch seconds (exclusive)
+     * @param to - end of the transaction range in epoch seconds (exclusive)
+     * @return - the relative balance and the number of transactions included
+     */
+    BalanceResult calculateBalance(String accountId, long from, long to);
+
+    /**
+     * Returns the number of transactions the balances are calculated from
+     * 
+     */
+    int size();
+}
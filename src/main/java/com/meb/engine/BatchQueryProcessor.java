@@ -0,0 +1,124 @@
+package com.meb.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.meb.metrics.Metrics;
+import com.meb.sink.CsvResultSink;
+import com.meb.sink.ResultSink;
+import com.meb.util.CsvTokenizer;
+import com.meb.util.InputIngester;
+import com.meb.util.Quarantine;
+import com.meb.util.ValidatorUtil;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.DateRange;
+import com.meb.vo.QueryResult;
+
+/**
+ * Answers a file of balance queries against transactions which are loaded once.
+ *
+ * The query file is a csv with a header row and one query per line: account id, from date and to date,
+ * with the dates in dd/MM/yyyy HH:mm:ss format. The results are published to a {@link ResultSink} in the
+ * order of the query file, by default as a csv of account id, from date, to date, relative balance and
+ * transactions count.
+ *
+ * Each query is answered as soon as it is read, so memory does not grow with the query file and the
+ * first results are published before the file is read to the end. Queries which fail validation are
+ * reported on the console, one line each, and left out of the results.
+ *
+ * @author sundeep
+ *
+ */
+public class BatchQueryProcessor {
+
+    /** Header row of the results csv */
+    public static final String HEADER = CsvResultSink.HEADER;
+
+    private final BalanceCalculator calculator;
+
+    /**
+     * @param calculator - the loaded transactions, e.g. a {@link com.meb.store.AccountIndex}
+     */
+    public BatchQueryProcessor(BalanceCalculator calculator) {
+        this.calculator = calculator;
+    }
+
+    /**
+     * Reads the queries, answers them and writes the results
+     *
+     * @param queryFile - csv file of account id, from date and to date
+     * @param out - receives the results csv
+     * @return - number of queries answered
+     */
+    public int process(String queryFile, Writer out) throws IOException {
+        int answered = process(queryFile, new CsvResultSink(out));
+        out.flush();
+        return answered;
+    }
+
+    /**
+     * Reads the queries, answers each one as it is read and publishes the results. The sink is left open
+     *
+     * @param queryFile - csv file of account id, from date and to date
+     * @param sink - receives the results
+     * @return - number of queries answered
+     */
+    public int process(String queryFile, ResultSink sink) throws IOException {
+        // the query file has a quarantine of its own, its rows count neither towards the error rate of the
+        // transaction files nor in the ingestion metrics
+        Answerer answerer = new Answerer(sink);
+        InputIngester.streamLines(queryFile, answerer, Quarantine.unmetered(queryFile));
+        if (answerer.failure != null) {
+            throw answerer.failure;
+        }
+        return answerer.answered;
+    }
+
+    /**
+     * Answers the queries of the file one line at a time, so that neither the queries nor the results are
+     * held. Once the sink fails the remaining queries are skipped and the failure is thrown after the read
+     *
+     */
+    private class Answerer implements Consumer<CsvTokenizer> {
+        private final ResultSink sink;
+        private final String[] query = new String[3];
+        private int read;
+        private int answered;
+        private IOException failure;
+
+        private Answerer(ResultSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(CsvTokenizer tokenizer) {
+            read++;
+            if (failure != null) {
+                return;
+            }
+            Arrays.fill(query, null);
+            for (int i = 0; i < query.length && i < tokenizer.getFieldCount(); i++) {
+                query[i] = tokenizer.getString(i);
+            }
+            DateRange range = ValidatorUtil.parseInputs(query[0], query[1], query[2]);
+            if (!range.isValid()) {
+                System.out.println("Skipping query " + read + " (" + range.getError() + ") : " +
+                                   String.join(", ", Arrays.asList(query)));
+                return;
+            }
+            long started = Metrics.ENABLED ? System.nanoTime() : 0;
+            BalanceResult result = calculator.calculateBalance(query[0], range.getFrom(), range.getTo());
+            if (Metrics.ENABLED) {
+                Metrics.get().recordQuery(System.nanoTime() - started);
+            }
+            try {
+                sink.publish(new QueryResult(query[0], query[1], query[2], result));
+                answered++;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.meb.engine;
+
+import java.util.function.Consumer;
+
+import com.meb.store.IdDictionary;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Paying account and original transaction id of the reversals among the records it is given, interned
+ * without case. Reversals are rare, so collecting them in a first read of the transaction files lets a second
+ * read leave out the payments they cancel without holding any payment. The keys of chunks read in parallel,
+ * see {@link com.meb.util.ChunkedFileReader}, are combined with {@link #merge(ReversalKeys)}.
+ *
+ * Once collected the keys are read only, and {@link #find(StringBuilder, String, String)} is safe for
+ * concurrent lookups.
+ *
+ * @author sundeep
+ *
+ */
+public class ReversalKeys implements Consumer<TransactionRecord> {
+
+    private final IdDictionary keys = new IdDictionary();
+    private final StringBuilder key = new StringBuilder();
+    private long recordsSize;
+
+    /**
+     * Counts a record and collects its key if it is a reversal
+     *
+     */
+    @Override
+    public void accept(TransactionRecord rec) {
+        recordsSize++;
+        if (rec.getOrigTransactionid() != null) {
+            keys.code(key(key, rec.getFromAccountId(), rec.getOrigTransactionid()));
+        }
+    }
+
+    /**
+     * Adds the keys collected from another part of the files
+     *
+     * @param other - keys of another part of the files
+     * @return - these keys
+     */
+    public ReversalKeys merge(ReversalKeys other) {
+        recordsSize += other.recordsSize;
+        for (int i = 0; i < other.keys.size(); i++) {
+            keys.code(other.keys.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * Returns the code of the reversal which cancels a payment, {@link IdDictionary#NOT_FOUND} if there is none
+     *
+     * @param scratch - builder the key is assembled in, one per thread
+     * @param payer - paying account of the payment
+     * @param txnId - transaction id of the payment
+     */
+    public int find(StringBuilder scratch, String payer, String txnId) {
+        return keys.size() == 0 ? IdDictionary.NOT_FOUND : keys.find(key(scratch, payer, txnId));
+    }
+
+    /**
+     * Returns the number of distinct (paying account, original transaction) pairs reversed. Codes returned
+     * by {@link #find(StringBuilder, String, String)} are below it
+     *
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the number of records read
+     *
+     */
+    public long getRecordsSize() {
+        return recordsSize;
+    }
+
+    /**
+     * Fills the key of a transaction of a paying account. Ids hold no comma, it separates the csv fields
+     *
+     */
+    private static StringBuilder key(StringBuilder key, String payer, String txnId) {
+        key.setLength(0);
+        return key.append(payer).append(',').append(txnId);
+    }
+}
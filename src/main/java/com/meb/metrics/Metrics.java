@@ -0,0 +1,246 @@
+package com.meb.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timers of ingestion and queries, shared by the whole JVM.
+ *
+ * Instrumentation is switched on with -Dmeb.metrics=true. Every call site is guarded by {@link #ENABLED},
+ * a static final flag the JIT folds into a constant, so with metrics off the guarded code is removed from
+ * the compiled hot loops. Ingestion is counted once per chunk or file, not per row, and all counters are
+ * {@link LongAdder}s so parsing threads do not contend on them.
+ *
+ * Every counter has one meaning in every mode, and is counted when the transactions are ingested, never
+ * when they are queried:
+ * <ul>
+ * <li>rowsRead - well formed transaction rows parsed from a file, once per file loaded, streamed or followed.
+ * A second read of the same file, as done by the account report, is not counted</li>
+ * <li>rowsRejected - malformed rows handed to a lenient {@link com.meb.util.Quarantine}</li>
+ * <li>reversalsMatched - payments cancelled by a reversal, counted when an {@link com.meb.store.AccountIndex}
+ * is built, also under a {@link com.meb.store.BalanceCube}, or a row is appended to
+ * {@link com.meb.store.LiveBalances}</li>
+ * <li>reversalsOrphaned - reversals whose original transaction is missing, counted when an index is built</li>
+ * </ul>
+ * Modes which answer a query while reading the file, such as the single account query and the report,
+ * build no index and so count no reversals.
+ *
+ * The counters are exposed over JMX as {@value #OBJECT_NAME} and as a one line JSON summary.
+ *
+ * @author sundeep
+ *
+ */
+public class Metrics implements MetricsMXBean {
+
+    /** System property which switches instrumentation on */
+    public static final String ENABLED_PROPERTY = "meb.metrics";
+
+    /** True if instrumentation is on */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    /** Name of the MXBean */
+    public static final String OBJECT_NAME = "com.meb:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder ingestNanos = new LongAdder();
+    private final LongAdder reversalsMatched = new LongAdder();
+    private final LongAdder reversalsOrphaned = new LongAdder();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+
+    Metrics() {
+    }
+
+    /**
+     * Returns the metrics of the JVM
+     *
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Counts a parsed chunk or file
+     *
+     * @param rows - well formed rows parsed
+     * @param bytes - bytes parsed
+     * @param nanos - time taken to parse them by one thread
+     */
+    public void addParsed(long rows, long bytes, long nanos) {
+        rowsRead.add(rows);
+        bytesRead.add(bytes);
+        parseNanos.add(nanos);
+    }
+
+    /**
+     * Counts malformed rows left out of the read
+     *
+     */
+    public void addRejected(long rows) {
+        rowsRejected.add(rows);
+    }
+
+    /**
+     * Adds the wall time of an ingestion, from opening the input to the last row
+     *
+     */
+    public void addIngestTime(long nanos) {
+        ingestNanos.add(nanos);
+    }
+
+    /**
+     * Counts payments cancelled by reversals, when they are indexed
+     *
+     */
+    public void addReversalsMatched(long payments) {
+        reversalsMatched.add(payments);
+    }
+
+    /**
+     * Counts reversals whose original transaction was not found, when they are indexed
+     *
+     */
+    public void addReversalsOrphaned(long reversals) {
+        reversalsOrphaned.add(reversals);
+    }
+
+    /**
+     * Records the latency of one balance query
+     *
+     */
+    public void recordQuery(long nanos) {
+        queryLatency.record(nanos);
+    }
+
+    /**
+     * Returns the histogram of query latencies
+     *
+     */
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getRowsRejected() {
+        return rowsRejected.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        long nanos = ingestNanos.sum();
+        return nanos == 0 ? 0 : (long) (bytesRead.sum() * 1e9 / nanos);
+    }
+
+    @Override
+    public long getParseNanosPerRow() {
+        long rows = rowsRead.sum();
+        return rows == 0 ? 0 : parseNanos.sum() / rows;
+    }
+
+    @Override
+    public long getReversalsMatched() {
+        return reversalsMatched.sum();
+    }
+
+    @Override
+    public long getReversalsOrphaned() {
+        return reversalsOrphaned.sum();
+    }
+
+    @Override
+    public long getQueries() {
+        return queryLatency.getCount();
+    }
+
+    @Override
+    public long getQueryLatencyMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryLatency.getMean());
+    }
+
+    @Override
+    public long getQueryLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryLatency.getPercentile(0.5));
+    }
+
+    @Override
+    public long getQueryLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryLatency.getPercentile(0.99));
+    }
+
+    @Override
+    public long getQueryLatencyP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryLatency.getPercentile(0.999));
+    }
+
+    @Override
+    public long getQueryLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(queryLatency.getMax());
+    }
+
+    @Override
+    public void reset() {
+        rowsRead.reset();
+        rowsRejected.reset();
+        bytesRead.reset();
+        parseNanos.reset();
+        ingestNanos.reset();
+        reversalsMatched.reset();
+        reversalsOrphaned.reset();
+        queryLatency.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, once
+     *
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by an earlier run in this JVM
+        } catch (JMException e) {
+            System.err.println("Error while registering metrics : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the counters as one line of JSON
+     *
+     */
+    public String toJson() {
+        return "{\"rowsRead\":" + getRowsRead() +
+               ",\"rowsRejected\":" + getRowsRejected() +
+               ",\"bytesRead\":" + getBytesRead() +
+               ",\"bytesPerSecond\":" + getBytesPerSecond() +
+               ",\"parseNanosPerRow\":" + getParseNanosPerRow() +
+               ",\"reversalsMatched\":" + getReversalsMatched() +
+               ",\"reversalsOrphaned\":" + getReversalsOrphaned() +
+               ",\"queries\":" + getQueries() +
+               ",\"queryLatencyMicros\":{\"mean\":" + getQueryLatencyMeanMicros() +
+               ",\"p50\":" + getQueryLatencyP50Micros() +
+               ",\"p99\":" + getQueryLatencyP99Micros() +
+               ",\"p999\":" + getQueryLatencyP999Micros() +
+               ",\"max\":" + getQueryLatencyMaxMicros() + "}}";
+    }
+}
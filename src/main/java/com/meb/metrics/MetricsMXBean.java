@@ -0,0 +1,47 @@
+package com.meb.metrics;
+
+/**
+ * Management interface of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}
+ *
+ * @author sundeep
+ *
+ */
+public interface MetricsMXBean {
+
+    /** Well formed rows parsed from transaction files, once per file ingested */
+    long getRowsRead();
+
+    /** Malformed rows handed to a lenient quarantine */
+    long getRowsRejected();
+
+    /** Bytes of transaction files parsed */
+    long getBytesRead();
+
+    /** Bytes parsed per second of ingestion wall time */
+    long getBytesPerSecond();
+
+    /** Parsing time per row, summed over the parsing threads */
+    long getParseNanosPerRow();
+
+    /** Payments matched and cancelled by a reversal of their paying account */
+    long getReversalsMatched();
+
+    /** Reversals whose original transaction is not a payment of their paying account */
+    long getReversalsOrphaned();
+
+    /** Balance queries answered */
+    long getQueries();
+
+    long getQueryLatencyMeanMicros();
+
+    long getQueryLatencyP50Micros();
+
+    long getQueryLatencyP99Micros();
+
+    long getQueryLatencyP999Micros();
+
+    long getQueryLatencyMaxMicros();
+
+    /** Clears every counter */
+    void reset();
+}
@@ -0,0 +1,163 @@
+package com.meb.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.metrics.Metrics;
+import com.meb.sink.JsonLinesResultSink;
+import com.meb.util.ValidatorUtil;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.DateRange;
+import com.meb.vo.QueryResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server which answers balance queries from transactions loaded once and kept in memory.
+ * It is built on the JDK's HTTP server, with the requests handled by a fixed pool of threads.
+ *
+ * A query is a GET of /balance with the parameters accountId, fromDate and toDate, the dates in
+ * dd/MM/yyyy HH:mm:ss format. The answer is a JSON object with the query, the relative balance and
+ * the transactions count. Invalid queries get a 400 status and a JSON object with the error.
+ *
+ * The server is bound to the loopback interface only, the balance API has no authentication.
+ * The calculator must be safe for concurrent queries, e.g. a {@link com.meb.store.AccountIndex}.
+ *
+ * The JDK server writes the headers and the body of a response separately, so without TCP_NODELAY the body
+ * of a small response waits for the delayed ack of the client, adding ~40ms to every query. Set
+ * {@value #NODELAY_PROPERTY} to true before the first server is created, as the analyser's main does.
+ *
+ * @author sundeep
+ *
+ */
+public class QueryServer {
+
+    /** Path of the balance queries */
+    public static final String BALANCE_PATH = "/balance";
+
+    /** System property which switches TCP_NODELAY on for the sockets of the JDK's HTTP server */
+    public static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final BalanceCalculator calculator;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server bound to a port of the loopback interface. It does not accept queries until it is started
+     *
+     * @param calculator - the loaded transactions
+     * @param port - port to listen on, 0 for any free port
+     * @param threads - number of threads which handle the requests
+     */
+    public QueryServer(BalanceCalculator calculator, int port, int threads) throws IOException {
+        this.calculator = calculator;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(BALANCE_PATH, this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting queries and waits for the ones being handled
+     *
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on
+     *
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the address the server listens on
+     *
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String accountId = params.get("accountId");
+            String fromDate = params.get("fromDate");
+            String toDate = params.get("toDate");
+            DateRange range = ValidatorUtil.parseInputs(accountId, fromDate, toDate);
+            if (!range.isValid()) {
+                respond(exchange, 400, error(range.getError()));
+                return;
+            }
+
+            long started = Metrics.ENABLED ? System.nanoTime() : 0;
+            BalanceResult balance = calculator.calculateBalance(accountId, range.getFrom(), range.getTo());
+            if (Metrics.ENABLED) {
+                Metrics.get().recordQuery(System.nanoTime() - started);
+            }
+            respond(exchange, 200, JsonLinesResultSink.toJson(new QueryResult(accountId, fromDate, toDate, balance)));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error("Malformed query string"));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                           URLDecoder.decode(param.substring(eq + 1), "UTF-8").trim());
+            }
+        }
+        return params;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + JsonLinesResultSink.escape(message) + "\"}";
+    }
+}
@@ -0,0 +1,125 @@
+package com.meb.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.meb.vo.QueryResult;
+
+/**
+ * Hands the results over, in batches, to a thread of its own which writes them to another sink, so the
+ * thread answering the queries does not wait on the output. At most a few batches are queued, after that
+ * publishing waits for the writer to catch up, so the memory held stays bounded however many results there are.
+ *
+ * An error of the writer is thrown by the next call to {@link #publish(QueryResult)} or by {@link #close()},
+ * and the results after it are dropped.
+ *
+ * Not thread safe, results are published by a single thread.
+ *
+ * @author sundeep
+ *
+ */
+public class AsyncResultSink implements ResultSink {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int BATCHES = 8;
+    private static final List<QueryResult> END = Collections.emptyList();
+
+    private final ResultSink sink;
+    private final Thread writer;
+    private final BlockingQueue<List<QueryResult>> queue = new ArrayBlockingQueue<>(BATCHES);
+    private volatile IOException error;
+    private List<QueryResult> batch = new ArrayList<>(BATCH_SIZE);
+    private boolean closed;
+
+    /**
+     * Starts the writing thread
+     *
+     * @param sink - the sink written to, closed with this one
+     */
+    public AsyncResultSink(ResultSink sink) {
+        this.sink = sink;
+        this.writer = new Thread(this::write, "meb-results");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void publish(QueryResult result) throws IOException {
+        if (closed) {
+            throw new IOException("Sink closed");
+        }
+        if (error != null) {
+            throw error;
+        }
+        batch.add(result);
+        if (batch.size() == BATCH_SIZE) {
+            handOver(batch);
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Hands over the last batch, waits for the writer to write everything and closes the sink written to
+     *
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!batch.isEmpty()) {
+                handOver(batch);
+            }
+            handOver(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+            throw new IOException("Interrupted while writing results", e);
+        } finally {
+            sink.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void handOver(List<QueryResult> results) throws IOException {
+        try {
+            queue.put(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing results", e);
+        }
+    }
+
+    /**
+     * Body of the writing thread: writes the batches until the end marker, dropping them after an error
+     * so that the publishing thread is never left waiting
+     *
+     */
+    private void write() {
+        try {
+            List<QueryResult> results;
+            while ((results = queue.take()) != END) {
+                for (int i = 0; i < results.size() && error == null; i++) {
+                    try {
+                        sink.publish(results.get(i));
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (RuntimeException e) {
+                        error = new IOException(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // the publishing thread gave up
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.meb.sink;
+
+import java.io.PrintStream;
+
+import com.meb.util.MoneyUtil;
+import com.meb.vo.QueryResult;
+
+/**
+ * Prints the relative balance and the transactions count of each result for a user at the console.
+ * The balance is summed in minor units and converted to a decimal only here
+ * 
+ * @author sundeep
+ *
+ */
+public class ConsoleResultSink implements ResultSink {
+
+    private final PrintStream out;
+
+    /**
+     * Prints to {@link System#out}, as it is when each result is published
+     * 
+     */
+    public ConsoleResultSink() {
+        this(null);
+    }
+
+    /**
+     * @param out - stream the results are printed to
+     */
+    public ConsoleResultSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void publish(QueryResult result) {
+        PrintStream stream = out == null ? System.out : out;
+        stream.println("\nRelative balance for the period is: " + MoneyUtil.format(result.getRelativeBalance()));
+        stream.println("Number of transactions included is: " + result.getTxnsSize());
+    }
+}
@@ -0,0 +1,45 @@
+package com.meb.sink;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.meb.util.MoneyUtil;
+import com.meb.vo.QueryResult;
+
+/**
+ * Writes the results as a csv of account id, from date, to date, relative balance and transactions count,
+ * with a header row
+ * 
+ * @author sundeep
+ *
+ */
+public class CsvResultSink implements ResultSink {
+
+    /** Header row of the results csv */
+    public static final String HEADER = "accountId, fromDate, toDate, relativeBalance, txnsSize";
+
+    private final Writer out;
+
+    /**
+     * Writes the header row
+     * 
+     * @param out - receives the csv, closed with the sink
+     */
+    public CsvResultSink(Writer out) throws IOException {
+        this.out = out;
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    @Override
+    public void publish(QueryResult result) throws IOException {
+        out.write(result.getAccountId() + ", " + result.getFromDate() + ", " + result.getToDate() + ", " +
+                  MoneyUtil.toDecimal(result.getRelativeBalance()).toPlainString() + ", " + result.getTxnsSize());
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
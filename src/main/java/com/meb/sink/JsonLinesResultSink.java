@@ -0,0 +1,67 @@
+package com.meb.sink;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.meb.util.MoneyUtil;
+import com.meb.vo.QueryResult;
+
+/**
+ * Writes each result as a JSON object on a line of its own, the same object the query server answers with
+ * 
+ * @author sundeep
+ *
+ */
+public class JsonLinesResultSink implements ResultSink {
+
+    private final Writer out;
+
+    /**
+     * @param out - receives the JSON lines, closed with the sink
+     */
+    public JsonLinesResultSink(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void publish(QueryResult result) throws IOException {
+        out.write(toJson(result));
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Returns the JSON object of a result, with the relative balance as a decimal number
+     * 
+     */
+    public static String toJson(QueryResult result) {
+        return "{\"accountId\":\"" + escape(result.getAccountId()) +
+               "\",\"fromDate\":\"" + escape(result.getFromDate()) +
+               "\",\"toDate\":\"" + escape(result.getToDate()) +
+               "\",\"relativeBalance\":" + MoneyUtil.toDecimal(result.getRelativeBalance()).toPlainString() +
+               ",\"txnsSize\":" + result.getTxnsSize() + "}";
+    }
+
+    /**
+     * Escapes the quotes, backslashes and control characters of a JSON string
+     * 
+     */
+    public static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package com.meb.sink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.meb.vo.QueryResult;
+
+/**
+ * Destination of the answers to balance queries, e.g. the console, a csv file or a JSON lines file.
+ * Results are published one at a time by a single thread, and closing the sink writes out whatever it holds.
+ * 
+ * @author sundeep
+ *
+ */
+public interface ResultSink extends Closeable {
+
+    /** Suffix of the result files written as JSON lines, any other file is written as csv */
+    String JSON_LINES_SUFFIX = ".jsonl";
+
+    /**
+     * Writes a result
+     * 
+     */
+    void publish(QueryResult result) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Opens a sink writing to a file, as JSON lines if its name ends with {@value #JSON_LINES_SUFFIX}, as csv otherwise
+     * 
+     */
+    static ResultSink open(Path file) throws IOException {
+        String name = file.toString();
+        if (name.regionMatches(true, name.length() - JSON_LINES_SUFFIX.length(), JSON_LINES_SUFFIX, 0, JSON_LINES_SUFFIX.length())) {
+            return new JsonLinesResultSink(Files.newBufferedWriter(file, Charset.defaultCharset()));
+        }
+        return new CsvResultSink(Files.newBufferedWriter(file, Charset.defaultCharset()));
+    }
+}
@@ -0,0 +1,396 @@
+package com.meb.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.metrics.Metrics;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Per account time index of the payments in a {@link TransactionStore}.
+ * For every account the outgoing and the incoming payments are kept sorted by creation time together
+ * with running sums of their amounts, so the relative balance of any range is found with four binary
+ * searches, in O(log n), without visiting the rows in the range.
+ *
+ * Payments which are reversed by their paying account are left out of the index on both sides, as the
+ * reversal applies whatever the queried range is. The number of reversals whose original transaction is
+ * missing is kept with the index.
+ *
+ * The index can be written to a side file next to the csv and read back, so that a restart does not
+ * rebuild it while the csv is unchanged. Once built it is read only and safe for concurrent queries.
+ *
+ * @author sundeep
+ *
+ */
+public class AccountIndex implements BalanceCalculator {
+
+    /** Suffix added to the csv file name to get the side file of its index */
+    public static final String FILE_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4d454249;     // MEBI
+    private static final int VERSION = 3;
+
+    private final IdDictionary accountIds;
+    private final int size;
+    private final int orphanReversals;
+
+    // payments of account a are at [start[a], start[a + 1]), its running sums at [start[a] + a, start[a + 1] + a]
+    // with prefix[i + a] the sum of the amounts of the account before i, so every account starts from 0
+    private final int[] outStart;
+    private final long[] outTimes;
+    private final long[] outPrefix;
+    private final int[] inStart;
+    private final long[] inTimes;
+    private final long[] inPrefix;
+
+    private AccountIndex(IdDictionary accountIds, int size, int orphanReversals, int[] outStart, long[] outTimes,
+                         long[] outPrefix, int[] inStart, long[] inTimes, long[] inPrefix) {
+        this.accountIds = accountIds;
+        this.size = size;
+        this.orphanReversals = orphanReversals;
+        this.outStart = outStart;
+        this.outTimes = outTimes;
+        this.outPrefix = outPrefix;
+        this.inStart = inStart;
+        this.inTimes = inTimes;
+        this.inPrefix = inPrefix;
+    }
+
+    /**
+     * Builds the index of a store
+     *
+     */
+    public static AccountIndex build(TransactionStore store) {
+        int accounts = store.getAccountIds().size();
+        int[] rows = paymentsByTime(store);
+        BitSet reversed = store.getReversedPayments();
+
+        int[] outStart = new int[accounts + 1];
+        int[] inStart = new int[accounts + 1];
+        for (int row : rows) {
+            if (!reversed.get(row)) {
+                outStart[store.getFromAccountId(row) + 1]++;
+                inStart[store.getToAccountId(row) + 1]++;
+            }
+        }
+        for (int a = 0; a < accounts; a++) {
+            outStart[a + 1] += outStart[a];
+            inStart[a + 1] += inStart[a];
+        }
+
+        // distribute the rows by account, keeping the time order
+        long[] outTimes = new long[outStart[accounts]];
+        long[] outAmounts = new long[outTimes.length];
+        long[] inTimes = new long[inStart[accounts]];
+        long[] inAmounts = new long[inTimes.length];
+        int[] outCursor = Arrays.copyOf(outStart, accounts);
+        int[] inCursor = Arrays.copyOf(inStart, accounts);
+        for (int row : rows) {
+            if (reversed.get(row)) {
+                continue;
+            }
+            int i = outCursor[store.getFromAccountId(row)]++;
+            outTimes[i] = store.getCreatedAt(row);
+            outAmounts[i] = store.getAmount(row);
+            i = inCursor[store.getToAccountId(row)]++;
+            inTimes[i] = store.getCreatedAt(row);
+            inAmounts[i] = store.getAmount(row);
+        }
+
+        int orphanReversals = store.getOrphanReversals().length;
+        if (Metrics.ENABLED) {
+            Metrics.get().addReversalsMatched(reversed.cardinality());
+            Metrics.get().addReversalsOrphaned(orphanReversals);
+        }
+        return new AccountIndex(store.getAccountIds(), store.size(), orphanReversals, outStart, outTimes,
+                                prefixSums(outStart, outAmounts), inStart, inTimes, prefixSums(inStart, inAmounts));
+    }
+
+    /**
+     * Calculates the relative balance of an account from the running sums of the payments in the range
+     *
+     */
+    @Override
+    public BalanceResult calculateBalance(String accountId, long from, long to) {
+        int account = accountIds.find(accountId);
+        if (account == IdDictionary.NOT_FOUND || account + 1 >= outStart.length) {
+            return new BalanceResult(0, 0);
+        }
+        return calculateBalance(account, from, to);
+    }
+
+    /**
+     * Calculates the relative balance of an indexed account, given by its code
+     *
+     */
+    BalanceResult calculateBalance(int account, long from, long to) {
+        int outLo = after(outTimes, outStart[account], outStart[account + 1], from);
+        int outHi = Math.max(outLo, before(outTimes, outStart[account], outStart[account + 1], to));
+        int inLo = after(inTimes, inStart[account], inStart[account + 1], from);
+        int inHi = Math.max(inLo, before(inTimes, inStart[account], inStart[account + 1], to));
+
+        long inBalance = Math.subtractExact(inPrefix[inHi + account], inPrefix[inLo + account]);
+        long outBalance = Math.subtractExact(outPrefix[outHi + account], outPrefix[outLo + account]);
+        return new BalanceResult(Math.subtractExact(inBalance, outBalance), (inHi - inLo) + (outHi - outLo));
+    }
+
+    /**
+     * Returns the number of store rows the index was built from
+     *
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of reversals in the store whose original transaction is not a payment of their
+     * paying account
+     *
+     */
+    public int getOrphanReversals() {
+        return orphanReversals;
+    }
+
+    /**
+     * Returns the dictionary of the account codes
+     *
+     */
+    IdDictionary getAccountIds() {
+        return accountIds;
+    }
+
+    /**
+     * Returns the number of accounts indexed, their codes are below it
+     *
+     */
+    int getAccounts() {
+        return outStart.length - 1;
+    }
+
+    /**
+     * Hands the payments of an account to the visitor in creation time order, outgoing ones with a negative
+     * amount. A payment to itself is visited twice, once on each side
+     *
+     */
+    void forEachPayment(int account, PaymentVisitor visitor) {
+        int out = outStart[account];
+        int in = inStart[account];
+        while (out < outStart[account + 1] || in < inStart[account + 1]) {
+            if (in == inStart[account + 1] || (out < outStart[account + 1] && outTimes[out] <= inTimes[in])) {
+                visitor.visit(outTimes[out], Math.negateExact(Math.subtractExact(outPrefix[out + account + 1],
+                                                                                 outPrefix[out + account])));
+                out++;
+            } else {
+                visitor.visit(inTimes[in], Math.subtractExact(inPrefix[in + account + 1], inPrefix[in + account]));
+                in++;
+            }
+        }
+    }
+
+    /**
+     * Writes the index to a side file. The size and modification time of the csv are recorded,
+     * so that {@link #read(Path, Path)} can tell if the index is stale
+     *
+     * @param file - the index file
+     * @param csvFile - the csv file which was indexed
+     */
+    public void write(Path file, Path csvFile) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(csvFile));
+            out.writeLong(Files.getLastModifiedTime(csvFile).toMillis());
+            out.writeInt(size);
+            out.writeInt(orphanReversals);
+            int accounts = outStart.length - 1;
+            out.writeInt(accounts);
+            for (int a = 0; a < accounts; a++) {
+                out.writeUTF(accountIds.get(a));
+            }
+            writeInts(out, outStart);
+            writeLongs(out, outTimes);
+            writeLongs(out, outPrefix);
+            writeInts(out, inStart);
+            writeLongs(out, inTimes);
+            writeLongs(out, inPrefix);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an index from its side file
+     *
+     * @param file - the index file
+     * @param csvFile - the csv file which was indexed
+     * @return - the index, or null if the file does not exist or the csv changed since it was written
+     */
+    public static AccountIndex read(Path file, Path csvFile) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+                    in.readLong() != Files.size(csvFile) ||
+                    in.readLong() != Files.getLastModifiedTime(csvFile).toMillis()) {
+                return null;
+            }
+            int size = in.readInt();
+            int orphanReversals = in.readInt();
+            int accounts = in.readInt();
+            IdDictionary accountIds = new IdDictionary();
+            for (int a = 0; a < accounts; a++) {
+                accountIds.code(in.readUTF());
+            }
+            return new AccountIndex(accountIds, size, orphanReversals, readInts(in), readLongs(in), readLongs(in),
+                                    readInts(in), readLongs(in), readLongs(in));
+        }
+    }
+
+    /**
+     * Returns the payment rows which have a creation time, ordered by it
+     *
+     */
+    static int[] paymentsByTime(TransactionStore store) {
+        int[] rows = new int[store.size()];
+        int count = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean sorted = true;
+        for (int i = 0; i < store.size(); i++) {
+            long createdAt = store.getCreatedAt(i);
+            if (store.getTxnType(i) != TransactionType.PAYMENT || createdAt == TimestampCodec.NONE) {
+                continue;
+            }
+            sorted &= count == 0 || createdAt >= store.getCreatedAt(rows[count - 1]);
+            min = Math.min(min, createdAt);
+            max = Math.max(max, createdAt);
+            rows[count++] = i;
+        }
+        rows = Arrays.copyOf(rows, count);
+        if (sorted) {
+            return rows;
+        }
+
+        if (max - min < (1L << 32)) {
+            // pack the time offset above the row so that a primitive sort orders by time, then row
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = ((store.getCreatedAt(rows[i]) - min) << 31) | rows[i];
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < count; i++) {
+                rows[i] = (int) (keys[i] & Integer.MAX_VALUE);
+            }
+            return rows;
+        }
+
+        Integer[] boxed = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            boxed[i] = rows[i];
+        }
+        Arrays.sort(boxed, (a, b) -> Long.compare(store.getCreatedAt(a), store.getCreatedAt(b)));
+        for (int i = 0; i < count; i++) {
+            rows[i] = boxed[i];
+        }
+        return rows;
+    }
+
+    /**
+     * Running sums of the amounts of each account, restarted at 0 for every account so that only the
+     * total of a single account can overflow
+     *
+     */
+    private static long[] prefixSums(int[] start, long[] amounts) {
+        int accounts = start.length - 1;
+        long[] prefix = new long[amounts.length + accounts];
+        for (int a = 0; a < accounts; a++) {
+            for (int i = start[a]; i < start[a + 1]; i++) {
+                prefix[i + a + 1] = Math.addExact(prefix[i + a], amounts[i]);
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * Index of the first time after the given one in [lo, hi)
+     *
+     */
+    private static int after(long[] times, int lo, int hi, long time) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the first time at or after the given one in [lo, hi)
+     *
+     */
+    private static int before(long[] times, int lo, int hi, long time) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Receives the payments of an account, see {@link AccountIndex#forEachPayment(int, PaymentVisitor)}
+     *
+     */
+    interface PaymentVisitor {
+        void visit(long createdAt, long amount);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,280 @@
+package com.meb.store;
+
+import java.util.Arrays;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.vo.BalanceResult;
+
+/**
+ * Pre-aggregation of the payments of an {@link AccountIndex} into per account hourly and daily buckets.
+ * Every bucket holds the net amount (incoming - outgoing) and the number of the payments of the account
+ * created in that hour or day, with payments reversed by their paying account left out on both sides.
+ *
+ * A range is answered from running sums over the buckets of the account for the whole days and hours inside
+ * it, and from the index for the parts of the hours which hold its bounds, so the results match the exclusive
+ * bounds of {@link TransactionStore#calculateBalance(String, long, long)}. The index keeps the payments of
+ * every account in time order, so those edge lookups are binary searches among the payments of the queried
+ * account whatever the order of the rows in the file.
+ *
+ * Only the buckets in which an account has payments are kept, so the memory the cube adds is bounded by the
+ * number of accounts times the number of hours and days, however many rows there are. The rows themselves
+ * stay in the index the cube is built from, the one batch and serve modes use without the cube. Once built
+ * the cube is read only and safe for concurrent queries.
+ *
+ * Batch and serve modes answer from the cube instead of the {@link AccountIndex} with -Dmeb.cube=true.
+ *
+ * @author sundeep
+ *
+ */
+public class BalanceCube implements BalanceCalculator {
+
+    /** System property which switches batch and serve modes to the cube */
+    public static final String ENABLED_PROPERTY = "meb.cube";
+
+    /** True if batch and serve modes answer from the cube */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final long SECONDS_PER_HOUR = 60 * 60;
+    private static final long HOURS_PER_DAY = 24;
+    // creation times are parsed dates, far inside these, clamping keeps the hour arithmetic clear of overflow
+    private static final long MIN_TIME = Long.MIN_VALUE / 2;
+    private static final long MAX_TIME = Long.MAX_VALUE / 2;
+
+    private final AccountIndex index;
+    private final Level hours;
+    private final Level days;
+
+    private BalanceCube(AccountIndex index, Level hours, Level days) {
+        this.index = index;
+        this.hours = hours;
+        this.days = days;
+    }
+
+    /**
+     * Builds the cube of an index, which answers the edges of the ranges
+     *
+     * @throws ArithmeticException - if the net amount of an account overflows a long
+     */
+    public static BalanceCube build(AccountIndex index) {
+        int accounts = index.getAccounts();
+        Buckets buckets = new Buckets(accounts);
+        for (int a = 0; a < accounts; a++) {
+            int account = a;
+            // the payments come in time order, so the buckets of an account are met in key order
+            index.forEachPayment(account, (createdAt, amount) ->
+                    buckets.add(account, Math.floorDiv(createdAt, SECONDS_PER_HOUR), amount, 1));
+            buckets.start[account + 1] = buckets.size;
+        }
+        Level hours = buckets.toLevel();
+        return new BalanceCube(index, hours, hours.group(HOURS_PER_DAY));
+    }
+
+    /**
+     * Calculates the relative balance of an account from the buckets of the whole days and hours in the
+     * range, and from the index for the hours which hold its bounds
+     *
+     */
+    @Override
+    public BalanceResult calculateBalance(String accountId, long from, long to) {
+        Sum sum = sum(accountId, from, to);
+        return new BalanceResult(sum.net, sum.count);
+    }
+
+    /**
+     * Returns the number of store rows the cube was built from
+     *
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of reversals in the store whose original transaction is not a payment of their
+     * paying account
+     *
+     */
+    public int getOrphanReversals() {
+        return index.getOrphanReversals();
+    }
+
+    /**
+     * Returns the number of bucket keys a query compares, apart from the edge lookups in the index
+     *
+     */
+    int getProbes(String accountId, long from, long to) {
+        return sum(accountId, from, to).probes;
+    }
+
+    /**
+     * Returns the number of hourly buckets kept
+     *
+     */
+    int getHourBuckets() {
+        return hours.keys.length;
+    }
+
+    /**
+     * Returns the number of daily buckets kept
+     *
+     */
+    int getDayBuckets() {
+        return days.keys.length;
+    }
+
+    private Sum sum(String accountId, long from, long to) {
+        Sum sum = new Sum();
+        int account = index.getAccountIds().find(accountId);
+        from = Math.max(from, MIN_TIME);
+        to = Math.min(to, MAX_TIME);
+        if (account == IdDictionary.NOT_FOUND || account >= index.getAccounts() || to - from < 2) {
+            return sum;
+        }
+
+        long firstHour = Math.floorDiv(from, SECONDS_PER_HOUR);
+        long lastHour = Math.floorDiv(to, SECONDS_PER_HOUR);
+        if (firstHour == lastHour) {
+            sum.add(index.calculateBalance(account, from, to));
+            return sum;
+        }
+        // the parts of the edge hours inside the range, bounds exclusive
+        sum.add(index.calculateBalance(account, from, (firstHour + 1) * SECONDS_PER_HOUR));
+        sum.add(index.calculateBalance(account, lastHour * SECONDS_PER_HOUR - 1, to));
+
+        // the hours in between are whole, and so are the days they cover
+        long hourLo = firstHour + 1;
+        long hourHi = lastHour;
+        if (hourLo < hourHi) {
+            long dayLo = Math.floorDiv(hourLo + HOURS_PER_DAY - 1, HOURS_PER_DAY);
+            long dayHi = Math.floorDiv(hourHi, HOURS_PER_DAY);
+            if (dayLo < dayHi) {
+                hours.add(account, hourLo, dayLo * HOURS_PER_DAY, sum);
+                days.add(account, dayLo, dayHi, sum);
+                hours.add(account, dayHi * HOURS_PER_DAY, hourHi, sum);
+            } else {
+                hours.add(account, hourLo, hourHi, sum);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Index of the first key at or after the given one in [lo, hi)
+     *
+     */
+    private static int atOrAfter(long[] keys, int lo, int hi, long key, Sum sum) {
+        while (lo < hi) {
+            sum.probes++;
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Buckets of one granularity while they are filled, account by account
+     *
+     */
+    private static class Buckets {
+        private final int[] start;
+        private long[] keys = new long[16];
+        private long[] net = new long[16];
+        private int[] count = new int[16];
+        private int size;
+
+        private Buckets(int accounts) {
+            this.start = new int[accounts + 1];
+        }
+
+        private void add(int account, long key, long amount, int payments) {
+            if (size == start[account] || keys[size - 1] != key) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    net = Arrays.copyOf(net, size * 2);
+                    count = Arrays.copyOf(count, size * 2);
+                }
+                keys[size++] = key;
+            }
+            net[size - 1] = Math.addExact(net[size - 1], amount);
+            count[size - 1] += payments;
+        }
+
+        private Level toLevel() {
+            return new Level(start, Arrays.copyOf(keys, size), Arrays.copyOf(net, size), Arrays.copyOf(count, size));
+        }
+    }
+
+    /**
+     * Buckets of one granularity. The buckets of account a are at [start[a], start[a + 1]) ordered by key,
+     * the running sums of account a are at [start[a] + a, start[a + 1] + a], the first of them 0
+     *
+     */
+    private static class Level {
+        private final int[] start;
+        private final long[] keys;
+        private final long[] netSums;
+        private final int[] countSums;
+
+        private Level(int[] start, long[] keys, long[] net, int[] count) {
+            int accounts = start.length - 1;
+            this.start = start;
+            this.keys = keys;
+            this.netSums = new long[keys.length + accounts];
+            this.countSums = new int[keys.length + accounts];
+            for (int a = 0; a < accounts; a++) {
+                for (int i = start[a]; i < start[a + 1]; i++) {
+                    netSums[i + a + 1] = Math.addExact(netSums[i + a], net[i]);
+                    countSums[i + a + 1] = countSums[i + a] + count[i];
+                }
+            }
+        }
+
+        /**
+         * Groups the buckets of each account into coarser buckets, width keys of this level wide
+         *
+         */
+        private Level group(long width) {
+            int accounts = start.length - 1;
+            Buckets groups = new Buckets(accounts);
+            for (int a = 0; a < accounts; a++) {
+                for (int i = start[a]; i < start[a + 1]; i++) {
+                    long key = Math.floorDiv(keys[i], width);
+                    groups.add(a, key, Math.subtractExact(netSums[i + a + 1], netSums[i + a]),
+                               countSums[i + a + 1] - countSums[i + a]);
+                }
+                groups.start[a + 1] = groups.size;
+            }
+            return groups.toLevel();
+        }
+
+        /**
+         * Adds the buckets of an account with keys in [keyLo, keyHi)
+         *
+         */
+        private void add(int account, long keyLo, long keyHi, Sum sum) {
+            int lo = atOrAfter(keys, start[account], start[account + 1], keyLo, sum);
+            int hi = atOrAfter(keys, lo, start[account + 1], keyHi, sum);
+            sum.net = Math.addExact(sum.net, Math.subtractExact(netSums[hi + account], netSums[lo + account]));
+            sum.count += countSums[hi + account] - countSums[lo + account];
+        }
+    }
+
+    /**
+     * Net amount and number of payments summed for a query, and the bucket keys it compared
+     *
+     */
+    private static class Sum {
+        private long net;
+        private int count;
+        private int probes;
+
+        private void add(BalanceResult balance) {
+            net = Math.addExact(net, balance.getRelativeBalance());
+            count += balance.getTxnsSize();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.meb.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes and reads primitive arrays to and from a file channel as little endian sections, one after
+ * the other. Sections are read by memory mapping them and copying them into arrays in bulk, which on
+ * little endian hardware is a plain memory copy with no per element decoding.
+ *
+ * @author sundeep
+ *
+ */
+class ColumnFile {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ColumnFile() {
+    }
+
+    /**
+     * Sequential writer of sections
+     *
+     */
+    static class Writer {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(ByteBuffer bytes) throws IOException {
+            flush();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        void writeLongs(long[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                int n = Math.min(length - i, buffer.remaining() / Long.BYTES);
+                if (n == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asLongBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * Long.BYTES);
+                i += n;
+            }
+        }
+
+        void writeInts(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                int n = Math.min(length - i, buffer.remaining() / Integer.BYTES);
+                if (n == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asIntBuffer().put(values, i, n);
+                buffer.position(buffer.position() + n * Integer.BYTES);
+                i += n;
+            }
+        }
+
+        void writeBytes(byte[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                int n = Math.min(length - i, buffer.remaining());
+                if (n == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.put(values, i, n);
+                i += n;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Sequential reader of sections
+     *
+     */
+    static class Reader {
+
+        private final FileChannel channel;
+        private long position;
+
+        Reader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        long[] readLongs(int length) throws IOException {
+            long[] values = new long[length];
+            map((long) length * Long.BYTES).asLongBuffer().get(values);
+            return values;
+        }
+
+        int[] readInts(int length) throws IOException {
+            int[] values = new int[length];
+            map((long) length * Integer.BYTES).asIntBuffer().get(values);
+            return values;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] values = new byte[length];
+            map(length).get(values);
+            return values;
+        }
+
+        private ByteBuffer map(long bytes) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            return mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by sections of the given lengths
+     *
+     */
+    static long size(long longs, long ints, long bytes) {
+        return longs * Long.BYTES + ints * Integer.BYTES + bytes;
+    }
+}
@@ -0,0 +1,268 @@
+package com.meb.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Dictionary which assigns dense int codes (0, 1, 2, ...) to id strings, ignoring case.
+ * Ids are upper cased character by character when they are added, so two ids which differ only
+ * in case get the same code and equality checks become int comparisons.
+ *
+ * The ids are not held as {@link String} objects but as characters in one shared byte array,
+ * located through an open addressing hash table of codes. Ids whose characters all fit in
+ * a byte take one byte per character, others take two. Lookups of a range of a character sequence
+ * do not allocate, so ids can be interned straight from a tokenized line.
+ *
+ * A dictionary can be shared by the stores of several files loaded in the same process, so that
+ * the codes are comparable across them. Not thread safe.
+ *
+ * @author sundeep
+ *
+ */
+public class IdDictionary {
+
+    /** Code returned by lookups of ids which are not in the dictionary */
+    public static final int NOT_FOUND = -1;
+
+    private byte[] chars = new byte[1024];
+    private int charsSize;
+    private int[] offsets = new int[64 + 1];
+    private final BitSet wide;
+    private int size;
+
+    // code + 1 of the id in each slot, 0 for an empty slot
+    private int[] table = new int[128];
+
+    public IdDictionary() {
+        this.wide = new BitSet();
+    }
+
+    /**
+     * Restores a dictionary from its internal arrays, as written to a {@link TransactionStore} snapshot
+     *
+     */
+    IdDictionary(byte[] chars, int[] offsets, long[] wide, int[] table) {
+        this.chars = chars;
+        this.charsSize = chars.length;
+        this.offsets = offsets;
+        this.wide = BitSet.valueOf(wide);
+        this.size = offsets.length - 1;
+        this.table = table;
+    }
+
+    /**
+     * Returns the code of the id, adding it to the dictionary if it is new
+     *
+     */
+    public int code(CharSequence id) {
+        return code(id, 0, id.length());
+    }
+
+    /**
+     * Returns the code of the id held in a range of a character sequence, adding it if it is new
+     *
+     * @param text - characters holding the id
+     * @param from - index of the first character of the id
+     * @param to - index after the last character of the id
+     * @return - code of the id
+     */
+    public int code(CharSequence text, int from, int to) {
+        int slot = hash(text, from, to) & (table.length - 1);
+        while (table[slot] != 0) {
+            int code = table[slot] - 1;
+            if (matches(code, text, from, to)) {
+                return code;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        int code = append(text, from, to);
+        table[slot] = code + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    /**
+     * Returns the code of the id, or {@link #NOT_FOUND} if it is not in the dictionary
+     *
+     */
+    public int find(CharSequence id) {
+        return find(id, 0, id.length());
+    }
+
+    /**
+     * Returns the code of the id held in a range of a character sequence, or {@link #NOT_FOUND}
+     *
+     * @param text - characters holding the id
+     * @param from - index of the first character of the id
+     * @param to - index after the last character of the id
+     * @return - code of the id
+     */
+    public int find(CharSequence text, int from, int to) {
+        int slot = hash(text, from, to) & (table.length - 1);
+        while (table[slot] != 0) {
+            int code = table[slot] - 1;
+            if (matches(code, text, from, to)) {
+                return code;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the upper cased id of a code
+     *
+     */
+    public String get(int code) {
+        if (code < 0 || code >= size) {
+            throw new IndexOutOfBoundsException("Unknown id code " + code);
+        }
+        int length = length(code);
+        char[] id = new char[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = charAt(code, i);
+        }
+        return new String(id);
+    }
+
+    /**
+     * Returns the number of ids in the dictionary
+     *
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Shrinks the internal arrays to the space in use
+     *
+     */
+    public void trimToSize() {
+        chars = Arrays.copyOf(chars, charsSize);
+        offsets = Arrays.copyOf(offsets, size + 1);
+    }
+
+    /**
+     * Writes the internal arrays, so that a read does not rebuild the hash table
+     *
+     */
+    void write(ColumnFile.Writer out) throws IOException {
+        out.writeBytes(chars, charsSize);
+        out.writeInts(offsets, size + 1);
+        out.writeInts(table, table.length);
+        long[] words = wide.toLongArray();
+        out.writeLongs(words, words.length);
+    }
+
+    /**
+     * Lengths of the arrays written by {@link #write(ColumnFile.Writer)}: chars, offsets, table and wide words
+     *
+     */
+    int[] sectionLengths() {
+        return new int[] { charsSize, size + 1, table.length, wide.toLongArray().length };
+    }
+
+    static IdDictionary read(ColumnFile.Reader in, int[] lengths) throws IOException {
+        byte[] chars = in.readBytes(lengths[0]);
+        int[] offsets = in.readInts(lengths[1]);
+        int[] table = in.readInts(lengths[2]);
+        long[] wide = in.readLongs(lengths[3]);
+        return new IdDictionary(chars, offsets, wide, table);
+    }
+
+    private int append(CharSequence text, int from, int to) {
+        int length = to - from;
+        boolean isWide = false;
+        for (int i = from; i < to; i++) {
+            isWide |= upper(text.charAt(i)) > 0xff;
+        }
+        int bytes = isWide ? length * 2 : length;
+        if (charsSize + bytes > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsSize + bytes));
+        }
+        for (int i = from; i < to; i++) {
+            char c = upper(text.charAt(i));
+            if (isWide) {
+                chars[charsSize++] = (byte) (c >> 8);
+            }
+            chars[charsSize++] = (byte) c;
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        wide.set(size, isWide);
+        offsets[size + 1] = charsSize;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        for (int code = 0; code < size; code++) {
+            int slot = hash(code) & (newTable.length - 1);
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & (newTable.length - 1);
+            }
+            newTable[slot] = code + 1;
+        }
+        table = newTable;
+    }
+
+    private boolean matches(int code, CharSequence text, int from, int to) {
+        if (length(code) != to - from) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (charAt(code, i - from) != upper(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int length(int code) {
+        int bytes = offsets[code + 1] - offsets[code];
+        return wide.get(code) ? bytes / 2 : bytes;
+    }
+
+    private char charAt(int code, int index) {
+        if (wide.get(code)) {
+            int offset = offsets[code] + index * 2;
+            return (char) (((chars[offset] & 0xff) << 8) | (chars[offset + 1] & 0xff));
+        }
+        return (char) (chars[offsets[code] + index] & 0xff);
+    }
+
+    private static int hash(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + upper(text.charAt(i));
+        }
+        return spread(h);
+    }
+
+    /**
+     * Hash of a stored id, the same as the one computed while looking it up
+     *
+     */
+    private int hash(int code) {
+        int h = 0;
+        for (int i = 0, length = length(code); i < length; i++) {
+            h = 31 * h + charAt(code, i);
+        }
+        return spread(h);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static char upper(char c) {
+        if (c < 0x80) {
+            return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+        }
+        return Character.toUpperCase(c);
+    }
+}
@@ -0,0 +1,241 @@
+package com.meb.store;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.metrics.Metrics;
+import com.meb.util.CsvTokenizer;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Balances of a transaction file which keeps growing. Lines are appended to a {@link TransactionStore}
+ * as they arrive, and the cached per account state is updated with the work of the new line only:
+ * <ul>
+ * <li>the rows of the outgoing and incoming payments of every account, so a range query scans the rows
+ * of the account rather than the whole store</li>
+ * <li>the balance and transactions count of every account over all of its payments, which answers the
+ * queries whose range holds every payment without visiting any row</li>
+ * <li>the live payments by transaction id and paying account, so a reversal finds the payments it cancels
+ * with one lookup</li>
+ * </ul>
+ * A reversal cancels the payment it refers to whether that payment arrived before it or arrives later, and
+ * the cached balances of the paying and the receiving account are corrected at once. Payments arriving after
+ * their reversal are found by the {@link ReversalIndex} of the store.
+ *
+ * Lines can be appended while queries are answered from other threads.
+ *
+ * @author sundeep
+ *
+ */
+public class LiveBalances implements BalanceCalculator, Consumer<CsvTokenizer> {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final TransactionStore store = new TransactionStore();
+    private final TimestampCodec codec = new TimestampCodec();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // per account rows of the payments with a creation time
+    private int[][] outRows = new int[16][];
+    private int[] outSize = new int[16];
+    private int[][] inRows = new int[16][];
+    private int[] inSize = new int[16];
+
+    // per account balance and count over all payments
+    private long[] balance = new long[16];
+    private int[] txnsSize = new int[16];
+
+    // payment rows cancelled by a reversal
+    private final BitSet reversed = new BitSet();
+
+    // live payments keyed by (transaction id, paying account) like the reversals of the store, the table
+    // holds the first row of a pair and samePair[row] chains the later rows with the same pair
+    private final ReversalIndex payments = new ReversalIndex();
+    private int[] samePair = new int[16];
+
+    // creation times of the earliest and the latest payment
+    private long firstPayment = Long.MAX_VALUE;
+    private long lastPayment = Long.MIN_VALUE;
+
+    /**
+     * Appends a tokenized csv line and updates the balances it affects
+     *
+     */
+    @Override
+    public void accept(CsvTokenizer tokenizer) {
+        lock.writeLock().lock();
+        try {
+            int row = InputIngester.addToStore(store, tokenizer, codec);
+            ensureCapacity();
+            if (store.getTxnType(row) == TransactionType.REVERSAL) {
+                addReversal(row);
+            } else if (store.getTxnType(row) == TransactionType.PAYMENT) {
+                addPayment(row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Calculates the relative balance of an account from the rows of its payments, or from its cached balance
+     * when the range holds every payment
+     *
+     */
+    @Override
+    public BalanceResult calculateBalance(String accountId, long from, long to) {
+        lock.readLock().lock();
+        try {
+            int account = store.getAccountIds().find(accountId);
+            if (account == IdDictionary.NOT_FOUND) {
+                return new BalanceResult(0, 0);
+            }
+            if (from < firstPayment && to > lastPayment) {
+                return new BalanceResult(balance[account], txnsSize[account]);
+            }
+
+            long relativeBalance = 0;
+            int count = 0;
+            int[] rows = rows(inRows, account);
+            for (int i = 0; i < inSize[account]; i++) {
+                long createdAt = store.getCreatedAt(rows[i]);
+                if (createdAt > from && createdAt < to && !reversed.get(rows[i])) {
+                    relativeBalance = Math.addExact(relativeBalance, store.getAmount(rows[i]));
+                    count++;
+                }
+            }
+            rows = rows(outRows, account);
+            for (int i = 0; i < outSize[account]; i++) {
+                long createdAt = store.getCreatedAt(rows[i]);
+                if (createdAt > from && createdAt < to && !reversed.get(rows[i])) {
+                    relativeBalance = Math.subtractExact(relativeBalance, store.getAmount(rows[i]));
+                    count++;
+                }
+            }
+            return new BalanceResult(relativeBalance, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the cached balance of an account over all of its payments
+     *
+     */
+    public BalanceResult getBalance(String accountId) {
+        lock.readLock().lock();
+        try {
+            int account = store.getAccountIds().find(accountId);
+            if (account == IdDictionary.NOT_FOUND) {
+                return new BalanceResult(0, 0);
+            }
+            return new BalanceResult(balance[account], txnsSize[account]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of rows appended so far
+     *
+     */
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return store.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addPayment(int row) {
+        long createdAt = store.getCreatedAt(row);
+        if (createdAt == TimestampCodec.NONE) {
+            return;
+        }
+        firstPayment = Math.min(firstPayment, createdAt);
+        lastPayment = Math.max(lastPayment, createdAt);
+
+        int to = store.getToAccountId(row);
+        inRows[to] = append(rows(inRows, to), inSize[to]++, row);
+        int from = store.getFromAccountId(row);
+        outRows[from] = append(rows(outRows, from), outSize[from]++, row);
+        if (store.isReversed(row)) {
+            // the reversal came first
+            reversed.set(row);
+            if (Metrics.ENABLED) {
+                Metrics.get().addReversalsMatched(1);
+            }
+        } else {
+            balance[to] = Math.addExact(balance[to], store.getAmount(row));
+            txnsSize[to]++;
+            balance[from] = Math.subtractExact(balance[from], store.getAmount(row));
+            txnsSize[from]++;
+
+            int txnId = store.getTxnId(row);
+            if (payments.add(txnId, from, row)) {
+                samePair[row] = ReversalIndex.NOT_FOUND;
+            } else {
+                int first = payments.find(txnId, from);
+                samePair[row] = samePair[first];
+                samePair[first] = row;
+            }
+        }
+    }
+
+    private void addReversal(int row) {
+        // cancel the payments of the account which arrived before the reversal
+        int first = payments.find(store.getOrigTxnId(row), store.getFromAccountId(row));
+        for (int payment = first; payment != ReversalIndex.NOT_FOUND; payment = samePair[payment]) {
+            if (!reversed.get(payment)) {
+                reversed.set(payment);
+                long amount = store.getAmount(payment);
+                int from = store.getFromAccountId(payment);
+                balance[from] = Math.addExact(balance[from], amount);
+                txnsSize[from]--;
+                int to = store.getToAccountId(payment);
+                balance[to] = Math.subtractExact(balance[to], amount);
+                txnsSize[to]--;
+                if (Metrics.ENABLED) {
+                    Metrics.get().addReversalsMatched(1);
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity() {
+        if (store.size() > samePair.length) {
+            samePair = Arrays.copyOf(samePair, Math.max(store.size(), samePair.length * 2));
+        }
+        int accounts = store.getAccountIds().size();
+        if (accounts > outRows.length) {
+            int capacity = Math.max(accounts, outRows.length * 2);
+            outRows = Arrays.copyOf(outRows, capacity);
+            outSize = Arrays.copyOf(outSize, capacity);
+            inRows = Arrays.copyOf(inRows, capacity);
+            inSize = Arrays.copyOf(inSize, capacity);
+            balance = Arrays.copyOf(balance, capacity);
+            txnsSize = Arrays.copyOf(txnsSize, capacity);
+        }
+    }
+
+    private static int[] rows(int[][] rows, int account) {
+        return rows[account] == null ? NO_ROWS : rows[account];
+    }
+
+    private static int[] append(int[] rows, int size, int row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(4, size * 2));
+        }
+        rows[size] = row;
+        return rows;
+    }
+}
@@ -0,0 +1,137 @@
+package com.meb.store;
+
+import java.util.Arrays;
+
+/**
+ * Links the original transactions to the reversals which cancel them, built as the reversal rows are added
+ * to a {@link TransactionStore}. A reversal cancels the payments carrying its original transaction id which
+ * were made by the same paying account, so the entries are keyed by the interned code of the original
+ * transaction and hold the paying account and the row of the first reversal of that pair.
+ *
+ * {@link LiveBalances} keeps a second table keyed the same way from the payments to their rows, so that a
+ * reversal arriving after its payment finds it with one lookup.
+ *
+ * The entries are kept in primitive arrays with open addressing and linear probing, so a lookup is a few
+ * array reads with no boxing or hashing of strings.
+ *
+ * Not thread safe while reversals are added.
+ *
+ * @author sundeep
+ *
+ */
+class ReversalIndex {
+
+    /** Returned by {@link #find(int, int)} when the payment is not reversed */
+    static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = -1;
+
+    private int size;
+    private int[] origTxnId = newTable(INITIAL_CAPACITY);
+    private int[] payer = new int[INITIAL_CAPACITY];
+    private int[] reversalRow = new int[INITIAL_CAPACITY];
+
+    /**
+     * Links an original transaction to a reversal. Later reversals of the same transaction by the same
+     * account are left out, they cancel nothing more
+     *
+     * @param origTxnId - code of the reversed transaction
+     * @param payer - code of the paying account of the reversal
+     * @param row - row of the reversal in the store
+     * @return - true if the pair was not linked yet
+     */
+    boolean add(int origTxnId, int payer, int row) {
+        if ((size + 1) * 2 > this.origTxnId.length) {
+            rehash(this.origTxnId.length * 2);
+        }
+        int slot = slot(origTxnId, payer);
+        if (this.origTxnId[slot] != EMPTY) {
+            return false;
+        }
+        this.origTxnId[slot] = origTxnId;
+        this.payer[slot] = payer;
+        this.reversalRow[slot] = row;
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns the row of the reversal which cancels a payment, {@link #NOT_FOUND} if there is none
+     *
+     * @param txnId - code of the transaction id of the payment
+     * @param payer - code of the paying account of the payment
+     */
+    int find(int txnId, int payer) {
+        if (size == 0) {
+            return NOT_FOUND;
+        }
+        int slot = slot(txnId, payer);
+        return origTxnId[slot] == EMPTY ? NOT_FOUND : reversalRow[slot];
+    }
+
+    /**
+     * Returns the number of linked (original transaction, paying account) pairs
+     *
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the reversal rows of the table, in no particular order
+     *
+     */
+    int[] rows() {
+        int[] rows = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < origTxnId.length; slot++) {
+            if (origTxnId[slot] != EMPTY) {
+                rows[count++] = reversalRow[slot];
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Slot of the pair, or the empty slot where it would go
+     *
+     */
+    private int slot(int txnId, int payer) {
+        int mask = origTxnId.length - 1;
+        int slot = hash(txnId, payer) & mask;
+        while (origTxnId[slot] != EMPTY && (origTxnId[slot] != txnId || this.payer[slot] != payer)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldOrigTxnId = origTxnId;
+        int[] oldPayer = payer;
+        int[] oldReversalRow = reversalRow;
+        origTxnId = newTable(capacity);
+        payer = new int[capacity];
+        reversalRow = new int[capacity];
+        for (int i = 0; i < oldOrigTxnId.length; i++) {
+            if (oldOrigTxnId[i] != EMPTY) {
+                int slot = slot(oldOrigTxnId[i], oldPayer[i]);
+                origTxnId[slot] = oldOrigTxnId[i];
+                payer[slot] = oldPayer[i];
+                reversalRow[slot] = oldReversalRow[i];
+            }
+        }
+    }
+
+    private static int hash(int txnId, int payer) {
+        // the codes are dense small ints, spread them over the table
+        int h = (txnId * 0x9e3779b9) ^ (payer * 0x85ebca6b);
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
@@ -0,0 +1,476 @@
+package com.meb.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Columnar, primitive backed store of transactions.
+ * Each column is an array indexed by row: creation time in epoch seconds, amount in minor units,
+ * dictionary codes for the transaction and account ids, and the transaction type ordinal.
+ * The original transaction codes are held only for the reversal rows.
+ * A row takes a few dozen bytes instead of a {@link TransactionRecord} with its boxed and string fields.
+ *
+ * Account ids and transaction ids, including the original transaction id of a reversal, are interned in
+ * case insensitive {@link IdDictionary dictionaries}. Comparisons and reversal lookups work on the int codes.
+ * A {@link ReversalIndex} built as the rows are added links every original transaction to its reversal, so whether
+ * a payment is reversed is found in O(1).
+ * The dictionaries can be shared by several stores so that their codes line up.
+ *
+ * A store can be written to a binary snapshot file, which holds the columns and the internal arrays of the
+ * dictionaries as they are in memory. Reading it back maps the file and copies the arrays in bulk, with
+ * no parsing or hashing. The columns are copied into heap arrays rather than left mapped, so that a loaded
+ * store can still grow, and the load takes time in proportion to the snapshot size: about 30ms per million
+ * rows measured by the SnapshotBenchmark, so about a second for 50 million rows.
+ *
+ * A snapshot is taken as stale when it is older than the csv or was written for a csv of another size.
+ * A csv rewritten with the same size whose modification time is then set back before the snapshot's is not
+ * detected, nor are the contents compared.
+ *
+ * Not thread safe while rows are added.
+ *
+ * @author sundeep
+ *
+ */
+public class TransactionStore implements BalanceCalculator {
+
+    /** Code in the original transaction column of rows which are not reversals */
+    public static final int NO_TXN = -1;
+
+    /** Suffix added to the csv file name to get the file of its snapshot */
+    public static final String FILE_SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x4d454253;     // MEBS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final byte PAYMENT = (byte) TransactionType.PAYMENT.ordinal();
+
+    private final IdDictionary accountIds;
+    private final IdDictionary txnIds;
+
+    private int size;
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    private long[] amount = new long[INITIAL_CAPACITY];
+    private int[] txnId = new int[INITIAL_CAPACITY];
+    private int[] fromAccountId = new int[INITIAL_CAPACITY];
+    private int[] toAccountId = new int[INITIAL_CAPACITY];
+    private byte[] txnType = new byte[INITIAL_CAPACITY];
+
+    // reversals are rare, so their original transaction ids are kept apart, ordered by row
+    private int reversalsSize;
+    private int[] reversalRow = new int[INITIAL_CAPACITY];
+    private int[] origTxnId = new int[INITIAL_CAPACITY];
+    private final ReversalIndex reversals = new ReversalIndex();
+
+    public TransactionStore() {
+        this(new IdDictionary(), new IdDictionary());
+    }
+
+    /**
+     * @param accountIds - dictionary of the account ids
+     * @param txnIds - dictionary of the transaction ids
+     */
+    public TransactionStore(IdDictionary accountIds, IdDictionary txnIds) {
+        this.accountIds = accountIds;
+        this.txnIds = txnIds;
+    }
+
+    /**
+     * Reads the sections of a snapshot, in the order they are written by {@link #write(Path, Path)}
+     *
+     */
+    private TransactionStore(ColumnFile.Reader in, int size, int reversalsSize, int[] accountLengths, int[] txnLengths)
+            throws IOException {
+        this.size = size;
+        this.createdAt = in.readLongs(size);
+        this.amount = in.readLongs(size);
+        this.txnId = in.readInts(size);
+        this.fromAccountId = in.readInts(size);
+        this.toAccountId = in.readInts(size);
+        this.txnType = in.readBytes(size);
+        this.reversalsSize = reversalsSize;
+        this.reversalRow = in.readInts(reversalsSize);
+        this.origTxnId = in.readInts(reversalsSize);
+        for (int r = 0; r < reversalsSize; r++) {
+            reversals.add(origTxnId[r], fromAccountId[reversalRow[r]], reversalRow[r]);
+        }
+        this.accountIds = IdDictionary.read(in, accountLengths);
+        this.txnIds = IdDictionary.read(in, txnLengths);
+    }
+
+    /**
+     * Adds a row
+     *
+     * @param txnId - transaction id
+     * @param fromAccountId - paying account id
+     * @param toAccountId - receiving account id
+     * @param createdAt - creation time in epoch seconds, {@link TimestampCodec#NONE} if unknown
+     * @param amount - amount in minor units
+     * @param txnType - transaction type
+     * @param origTxnId - transaction id reversed by this row, null if it is not a reversal
+     * @return - the index of the row
+     */
+    public int add(String txnId, String fromAccountId, String toAccountId, long createdAt, long amount,
+                   TransactionType txnType, String origTxnId) {
+        return add(txnIds.code(txnId), accountIds.code(fromAccountId), accountIds.code(toAccountId), createdAt, amount,
+                   txnType, origTxnId == null ? NO_TXN : txnIds.code(origTxnId));
+    }
+
+    /**
+     * Adds a row whose ids are already interned in the dictionaries of this store
+     *
+     * @param txnId - transaction id code
+     * @param fromAccountId - paying account id code
+     * @param toAccountId - receiving account id code
+     * @param createdAt - creation time in epoch seconds, {@link TimestampCodec#NONE} if unknown
+     * @param amount - amount in minor units
+     * @param txnType - transaction type
+     * @param origTxnId - code of the transaction reversed by this row, {@link #NO_TXN} if it is not a reversal
+     * @return - the index of the row
+     */
+    public int add(int txnId, int fromAccountId, int toAccountId, long createdAt, long amount,
+                   TransactionType txnType, int origTxnId) {
+        ensureCapacity(size + 1);
+        this.txnId[size] = txnId;
+        this.fromAccountId[size] = fromAccountId;
+        this.toAccountId[size] = toAccountId;
+        this.createdAt[size] = createdAt;
+        this.amount[size] = amount;
+        this.txnType[size] = (byte) txnType.ordinal();
+        if (origTxnId != NO_TXN) {
+            if (reversalsSize == reversalRow.length) {
+                reversalRow = Arrays.copyOf(reversalRow, reversalsSize * 2 + 1);
+                this.origTxnId = Arrays.copyOf(this.origTxnId, reversalRow.length);
+            }
+            reversalRow[reversalsSize] = size;
+            this.origTxnId[reversalsSize++] = origTxnId;
+            reversals.add(origTxnId, fromAccountId, size);
+        }
+        return size++;
+    }
+
+    /**
+     * Adds a row holding the fields of a record
+     *
+     * @return - the index of the row
+     */
+    public int add(TransactionRecord rec) {
+        return add(rec.getTransactionId(), rec.getFromAccountId(), rec.getToAccountId(), rec.getCreatedAtEpochSecond(),
+                   rec.getAmountMinorUnits(), rec.getTxnType(), rec.getOrigTransactionid());
+    }
+
+    /**
+     * Returns a row as a new {@link TransactionRecord}
+     *
+     */
+    public TransactionRecord getRecord(int row) {
+        checkRow(row);
+        TransactionRecord rec = new TransactionRecord();
+        rec.setTransactionId(txnIds.get(txnId[row]));
+        rec.setFromAccountId(accountIds.get(fromAccountId[row]));
+        rec.setToAccountId(accountIds.get(toAccountId[row]));
+        rec.setCreatedAtEpochSecond(createdAt[row]);
+        rec.setAmountMinorUnits(amount[row]);
+        rec.setTxnType(TYPES[txnType[row]]);
+        int orig = getOrigTxnId(row);
+        if (orig != NO_TXN) {
+            rec.setOrigTransactionid(txnIds.get(orig));
+        }
+        return rec;
+    }
+
+    /**
+     * Calculates the relative balance of an account with a scan of the columns.
+     * Payments reversed by their paying account are excluded on both sides, wherever the reversal sits in the store
+     *
+     */
+    @Override
+    public BalanceResult calculateBalance(String accountId, long from, long to) {
+        int account = accountIds.find(accountId);
+        if (account == IdDictionary.NOT_FOUND) {
+            return new BalanceResult(0, 0);
+        }
+
+        long inBalance = 0;
+        int inTxnsSize = 0;
+        long outBalance = 0;
+        int outTxnsSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (txnType[i] != PAYMENT || createdAt[i] <= from || createdAt[i] >= to ||
+                    (fromAccountId[i] != account && toAccountId[i] != account)) {
+                continue;
+            }
+            if (reversals.find(txnId[i], fromAccountId[i]) != ReversalIndex.NOT_FOUND) {
+                continue;
+            }
+            if (fromAccountId[i] == account) {
+                outBalance = Math.addExact(outBalance, amount[i]);
+                outTxnsSize++;
+            }
+            if (toAccountId[i] == account) {
+                inBalance = Math.addExact(inBalance, amount[i]);
+                inTxnsSize++;
+            }
+        }
+        return new BalanceResult(Math.subtractExact(inBalance, outBalance), inTxnsSize + outTxnsSize);
+    }
+
+    /**
+     * Returns true if the row is a payment which is reversed by a reversal from the same paying account
+     *
+     */
+    public boolean isReversed(int row) {
+        checkRow(row);
+        return txnType[row] == PAYMENT && reversals.find(txnId[row], fromAccountId[row]) != ReversalIndex.NOT_FOUND;
+    }
+
+    /**
+     * Returns the rows of the payments which are reversed by a reversal from the same paying account
+     *
+     */
+    public BitSet getReversedPayments() {
+        BitSet reversed = new BitSet(size);
+        if (reversals.size() > 0) {
+            for (int i = 0; i < size; i++) {
+                if (txnType[i] == PAYMENT && reversals.find(txnId[i], fromAccountId[i]) != ReversalIndex.NOT_FOUND) {
+                    reversed.set(i);
+                }
+            }
+        }
+        return reversed;
+    }
+
+    /**
+     * Returns the rows of the reversals whose original transaction is not a payment of the same paying account
+     * in the store, in row order. Only the first reversal of a transaction is checked
+     *
+     */
+    public int[] getOrphanReversals() {
+        BitSet matched = new BitSet(size);
+        if (reversals.size() > 0) {
+            for (int i = 0; i < size; i++) {
+                if (txnType[i] == PAYMENT) {
+                    int reversal = reversals.find(txnId[i], fromAccountId[i]);
+                    if (reversal != ReversalIndex.NOT_FOUND) {
+                        matched.set(reversal);
+                    }
+                }
+            }
+        }
+        int[] orphans = reversals.rows();
+        int count = 0;
+        for (int row : orphans) {
+            if (!matched.get(row)) {
+                orphans[count++] = row;
+            }
+        }
+        orphans = Arrays.copyOf(orphans, count);
+        Arrays.sort(orphans);
+        return orphans;
+    }
+
+    /**
+     * Returns the number of rows
+     *
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public IdDictionary getAccountIds() {
+        return accountIds;
+    }
+
+    public IdDictionary getTxnIds() {
+        return txnIds;
+    }
+
+    public long getCreatedAt(int row) {
+        checkRow(row);
+        return createdAt[row];
+    }
+
+    public long getAmount(int row) {
+        checkRow(row);
+        return amount[row];
+    }
+
+    public int getTxnId(int row) {
+        checkRow(row);
+        return txnId[row];
+    }
+
+    public int getFromAccountId(int row) {
+        checkRow(row);
+        return fromAccountId[row];
+    }
+
+    public int getToAccountId(int row) {
+        checkRow(row);
+        return toAccountId[row];
+    }
+
+    /**
+     * Returns the code of the transaction reversed by the row, {@link #NO_TXN} if it is not a reversal
+     *
+     */
+    public int getOrigTxnId(int row) {
+        checkRow(row);
+        int r = Arrays.binarySearch(reversalRow, 0, reversalsSize, row);
+        return r < 0 ? NO_TXN : origTxnId[r];
+    }
+
+    public TransactionType getTxnType(int row) {
+        checkRow(row);
+        return TYPES[txnType[row]];
+    }
+
+    /**
+     * Shrinks the columns and the dictionaries to the space in use
+     *
+     */
+    public void trimToSize() {
+        resize(size);
+        reversalRow = Arrays.copyOf(reversalRow, reversalsSize);
+        origTxnId = Arrays.copyOf(origTxnId, reversalsSize);
+        accountIds.trimToSize();
+        txnIds.trimToSize();
+    }
+
+    /**
+     * Writes the store to a snapshot file. The size of the csv is recorded, so that {@link #read(Path, Path)}
+     * can tell if the snapshot is stale
+     *
+     * @param file - the snapshot file
+     * @param csvFile - the csv file the store was loaded from
+     */
+    public void write(Path file, Path csvFile) throws IOException {
+        int[] accountLengths = accountIds.sectionLengths();
+        int[] txnLengths = txnIds.sectionLengths();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(Files.size(csvFile)).putLong(Files.getLastModifiedTime(csvFile).toMillis())
+              .putInt(size).putInt(reversalsSize);
+        for (int length : accountLengths) {
+            header.putInt(length);
+        }
+        for (int length : txnLengths) {
+            header.putInt(length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, HEADER_SIZE);
+        header.putInt((int) crc.getValue());
+        header.flip();
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnFile.Writer out = new ColumnFile.Writer(channel);
+            out.write(header);
+            out.writeLongs(createdAt, size);
+            out.writeLongs(amount, size);
+            out.writeInts(txnId, size);
+            out.writeInts(fromAccountId, size);
+            out.writeInts(toAccountId, size);
+            out.writeBytes(txnType, size);
+            out.writeInts(reversalRow, reversalsSize);
+            out.writeInts(origTxnId, reversalsSize);
+            accountIds.write(out);
+            txnIds.write(out);
+            out.flush();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a store from its snapshot file
+     *
+     * @param file - the snapshot file
+     * @param csvFile - the csv file the store was loaded from
+     * @return - the store, or null if the snapshot does not exist, is older than the csv or was written
+     *           for a csv of another size. A csv rewritten with the same size and an older modification time
+     *           than the snapshot is not detected
+     * @throws IOException - if the snapshot cannot be read or is corrupt
+     */
+    public static TransactionStore read(Path file, Path csvFile) throws IOException {
+        if (!Files.exists(file) ||
+                Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(csvFile)) < 0) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // read the whole header
+            }
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, HEADER_SIZE);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE + Integer.BYTES || header.getInt() != MAGIC || header.getInt() != VERSION ||
+                    header.getInt(HEADER_SIZE) != (int) crc.getValue()) {
+                throw new IOException("Corrupt snapshot header in " + file);
+            }
+            if (header.getLong() != Files.size(csvFile)) {
+                return null;
+            }
+            header.getLong();       // modification time of the csv, informational
+            int size = header.getInt();
+            int reversalsSize = header.getInt();
+            int[] accountLengths = new int[4];
+            int[] txnLengths = new int[4];
+            for (int i = 0; i < 4; i++) {
+                accountLengths[i] = header.getInt();
+            }
+            for (int i = 0; i < 4; i++) {
+                txnLengths[i] = header.getInt();
+            }
+            long expected = HEADER_SIZE + Integer.BYTES + ColumnFile.size(2L * size, 3L * size + 2L * reversalsSize, size) +
+                            ColumnFile.size(accountLengths[3] + txnLengths[3],
+                                            accountLengths[1] + accountLengths[2] + txnLengths[1] + txnLengths[2],
+                                            accountLengths[0] + txnLengths[0]);
+            if (channel.size() != expected) {
+                throw new IOException("Truncated snapshot " + file + ", expected " + expected + " bytes");
+            }
+
+            return new TransactionStore(new ColumnFile.Reader(channel, HEADER_SIZE + Integer.BYTES), size, reversalsSize,
+                                        accountLengths, txnLengths);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > createdAt.length) {
+            resize(Math.max(capacity, createdAt.length * 2));
+        }
+    }
+
+    private void resize(int capacity) {
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        amount = Arrays.copyOf(amount, capacity);
+        txnId = Arrays.copyOf(txnId, capacity);
+        fromAccountId = Arrays.copyOf(fromAccountId, capacity);
+        toAccountId = Arrays.copyOf(toAccountId, capacity);
+        txnType = Arrays.copyOf(txnType, capacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is outside the store of " + size + " rows");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.meb.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable {@link CharSequence} view of a range of single byte characters in a {@link ByteBuffer}.
+ * It lets the {@link CsvTokenizer} work on mapped file content without decoding every line into a string.
+ * Only ASCII content should be viewed through it.
+ * 
+ * @author sundeep
+ *
+ */
+public class ByteCharSequence implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    /**
+     * Points the view at a range of the buffer
+     * 
+     * @param buffer - buffer holding the characters
+     * @param from - index of the first byte
+     * @param to - index after the last byte
+     * @return - this view
+     */
+    public ByteCharSequence wrap(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.offset = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    /**
+     * Returns the range as a new string, so the result stays valid when the view is moved
+     * 
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(start + i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
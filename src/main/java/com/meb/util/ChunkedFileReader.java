@@ -0,0 +1,531 @@
+package com.meb.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.meb.metrics.Metrics;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Reads a transaction csv file by memory mapping it and parsing newline aligned chunks in parallel.
+ * Every chunk is folded into its own accumulator, and the accumulators are combined in file order
+ * once all chunks are done. Like {@link InputIngester#streamTransactions(String, Consumer)}, no
+ * list of records is built.
+ *
+ * A gzip compressed file cannot be mapped. It is decompressed on a thread of its own, see
+ * {@link DecompressingInputStream}, and the calling thread cuts the content into newline aligned chunks
+ * which are parsed by the same threads. Only a few chunks are in flight at a time, so decompressing
+ * and parsing overlap while the memory held stays bounded.
+ *
+ * A chunk does not know the line number its first line has, so the malformed rows of a lenient
+ * {@link Quarantine} are kept with the chunk and written, with their line numbers, once the lines
+ * of the chunks before are counted.
+ *
+ * A file whose name holds a date, see {@link PartitionedDataset}, is taken to hold the transactions created on
+ * that day, which is what lets a query leave it out. The rows created on another day are counted while reading,
+ * and a warning is printed for every file which holds some.
+ *
+ * @author sundeep
+ *
+ */
+public class ChunkedFileReader {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int COMPRESSED_CHUNK_SIZE = 4 << 20;
+    private static final int COMPRESSED_CHUNKS_PER_THREAD = 2;
+
+    private final int threads;
+    private final long chunkSize;
+    private final Quarantine quarantine;
+
+    /**
+     * Creates a reader which sizes the chunks from the file size and the number of threads
+     *
+     * @param threads - number of threads parsing chunks
+     */
+    public ChunkedFileReader(int threads) {
+        this(threads, 0);
+    }
+
+    /**
+     * @param threads - number of threads parsing chunks
+     * @param chunkSize - approximate bytes per chunk, 0 to size the chunks from the file size
+     */
+    public ChunkedFileReader(int threads, long chunkSize) {
+        this(threads, chunkSize, Quarantine.getDefault());
+    }
+
+    /**
+     * @param threads - number of threads parsing chunks
+     * @param chunkSize - approximate bytes per chunk, 0 to size the chunks from the file size
+     * @param quarantine - handles the malformed rows
+     */
+    public ChunkedFileReader(int threads, long chunkSize, Quarantine quarantine) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads should be at least 1");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Reads the csv file and folds its records into accumulators, one per chunk
+     *
+     * @param fileName - the input transaction file
+     * @param supplier - creates an empty accumulator for a chunk
+     * @param combiner - combines the accumulator of a chunk into the one of the previous chunks
+     * @return - the combined accumulator
+     */
+    public <A extends Consumer<TransactionRecord>> A read(String fileName, Supplier<A> supplier, BinaryOperator<A> combiner) {
+        return read(Collections.singletonList(Paths.get(fileName)), supplier, combiner);
+    }
+
+    /**
+     * Reads several csv files, each with its own header row, as one. The chunks of all files are parsed
+     * by the same threads, and the accumulators are combined in file order, then chunk order.
+     * Files can be gzip compressed
+     *
+     * @param files - the input transaction files
+     * @param supplier - creates an empty accumulator for a chunk
+     * @param combiner - combines the accumulator of a chunk into the one of the previous chunks
+     * @return - the combined accumulator
+     */
+    public <A extends Consumer<TransactionRecord>> A read(List<Path> files, Supplier<A> supplier, BinaryOperator<A> combiner) {
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            long totalSize = 0;
+            for (Path file : files) {
+                FileChannel channel = DecompressingInputStream.isCompressed(file.toString()) ? null
+                                                                                             : FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                totalSize += channel == null ? 0 : channel.size();
+            }
+            long chunk = chunkSize > 0 ? chunkSize : Math.max(MIN_CHUNK_SIZE, totalSize / (threads * CHUNKS_PER_THREAD));
+            chunk = Math.min(MAX_CHUNK_SIZE, chunk);
+
+            List<Chunk> chunks = new ArrayList<>();
+            List<Future<A>> results = new ArrayList<>();
+            Semaphore inFlight = new Semaphore(threads * COMPRESSED_CHUNKS_PER_THREAD);
+            for (int f = 0; f < files.size(); f++) {
+                FileChannel channel = channels.get(f);
+                if (channel == null) {
+                    int compressedChunk = chunkSize > 0 ? (int) Math.min(chunkSize, COMPRESSED_CHUNK_SIZE) : COMPRESSED_CHUNK_SIZE;
+                    submitCompressed(files.get(f), compressedChunk, pool, inFlight, supplier, chunks, results);
+                    continue;
+                }
+                long size = channel.size();
+                long start = nextLine(channel, 0);      // skip header row
+                while (start < size) {
+                    Chunk part = new Chunk(files.get(f).toString(), start, nextLine(channel, Math.min(size, start + chunk)));
+                    chunks.add(part);
+                    results.add(pool.submit(() -> readChunk(channel, part, supplier.get())));
+                    start = part.end;
+                }
+            }
+
+            A result = supplier.get();
+            try {
+                for (Future<A> future : results) {
+                    result = combiner.apply(result, future.get());
+                }
+            } finally {
+                if (quarantine.isLenient()) {
+                    pool.shutdownNow();
+                    pool.awaitTermination(1, TimeUnit.MINUTES);
+                    writeRejects(chunks);
+                }
+            }
+            warnOutsideDay(chunks);
+            if (quarantine.isAborted()) {
+                throw new IllegalStateException(quarantine.getAbortMessage());
+            }
+            if (Metrics.ENABLED && quarantine.isMetered()) {
+                Metrics.get().addIngestTime(System.nanoTime() - started);
+            }
+            return result;
+        } catch (IOException e) {
+            System.out.println("Error while reading input file : " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading input file", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error while reading input file", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            for (FileChannel channel : channels) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    // nothing left to read from it
+                }
+            }
+        }
+        return supplier.get();
+    }
+
+    /**
+     * Parses the lines of one chunk into the accumulator. A lenient read stops early once the
+     * quarantine gives up
+     *
+     */
+    private <A extends Consumer<TransactionRecord>> A readChunk(FileChannel channel, Chunk chunk, A accumulator)
+            throws IOException {
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        long start = chunk.start;
+        long end = chunk.end;
+        boolean lenient = quarantine.isLenient();
+        if (lenient && quarantine.isAborted()) {
+            return accumulator;
+        }
+        int uncounted = 0;
+        ByteBuffer buffer = chunk.buffer != null ? chunk.buffer : channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ByteCharSequence view = new ByteCharSequence();
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        TimestampCodec codec = new TimestampCodec();
+
+        int limit = buffer.limit();
+        int lineStart = 0;
+        boolean ascii = true;
+        long rows = 0;
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (b == '\n') {
+                if (i == limit && lineStart == limit) {
+                    break;      // the chunk ends with a newline
+                }
+                chunk.lines++;
+                CharSequence line = ascii ? view.wrap(buffer, lineStart, i) : decode(buffer, lineStart, i);
+                if (tokenizer.tokenize(line) > 0) {      // skip empty line
+                    if (lenient) {
+                        uncounted++;
+                    }
+                    TransactionRecord rec;
+                    try {
+                        rec = InputIngester.toTransactionRecord(tokenizer, codec);
+                    } catch (MalformedRowException e) {
+                        if (!lenient) {
+                            long lineNumber = chunk.linesBefore >= 0 ? chunk.linesBefore + chunk.lines
+                                                                     : lineNumber(channel, start + lineStart);
+                            throw e.at(chunk.file, "line " + lineNumber);
+                        }
+                        chunk.reject(line.toString(), e.getReason());
+                        boolean goOn = quarantine.addError(uncounted);
+                        uncounted = 0;
+                        if (!goOn) {
+                            return accumulator;
+                        }
+                        rec = null;
+                    }
+                    if (rec != null) {
+                        if (chunk.dayStart != TimestampCodec.NONE && !PartitionedDataset.isInDay(rec, chunk.dayStart)) {
+                            chunk.outsideDay++;
+                        }
+                        accumulator.accept(rec);
+                        if (Metrics.ENABLED) {
+                            rows++;
+                        }
+                    }
+                    if (uncounted == Quarantine.COUNT_BATCH) {
+                        quarantine.count(uncounted);
+                        uncounted = 0;
+                        if (quarantine.isAborted()) {
+                            return accumulator;
+                        }
+                    }
+                }
+                lineStart = i + 1;
+                ascii = true;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        quarantine.count(uncounted);
+        chunk.complete = true;
+        if (Metrics.ENABLED && quarantine.isMetered()) {
+            Metrics.get().addParsed(rows, end - start, System.nanoTime() - started);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Decompresses a gzip file and submits its content in newline aligned chunks. Waits for chunks in flight
+     * to be parsed before cutting more, and stops early once a chunk fails or the quarantine gives up
+     *
+     * @param file - the compressed file
+     * @param chunkSize - approximate decompressed bytes per chunk
+     */
+    private <A extends Consumer<TransactionRecord>> void submitCompressed(Path file, int chunkSize, ExecutorService pool,
+                                                                          Semaphore inFlight, Supplier<A> supplier,
+                                                                          List<Chunk> chunks, List<Future<A>> results)
+            throws IOException, InterruptedException {
+        AtomicBoolean failed = new AtomicBoolean();
+        try (InputStream in = new DecompressingInputStream(file)) {
+            byte[] block = new byte[chunkSize];
+            int filled = 0;
+            long offset = 0;            // of the block in the decompressed content
+            long linesBefore = -1;      // lines before the block, unknown until the header row is skipped
+            boolean eof = false;
+            while (!eof && !failed.get() && !(quarantine.isLenient() && quarantine.isAborted())) {
+                int read = 0;
+                while (filled < block.length && (read = in.read(block, filled, block.length - filled)) >= 0) {
+                    filled += read;
+                }
+                eof = read < 0;
+
+                int end = eof ? filled : lastNewline(block, filled) + 1;
+                if (linesBefore < 0) {
+                    // skip header row
+                    int header = firstNewline(block, filled) + 1;
+                    if (header == 0) {
+                        if (!eof) {
+                            block = Arrays.copyOf(block, block.length * 2);
+                            continue;
+                        }
+                        header = filled;
+                    }
+                    System.arraycopy(block, header, block, 0, filled - header);
+                    filled -= header;
+                    end = eof ? filled : lastNewline(block, filled) + 1;
+                    offset = header;
+                    linesBefore = 1;
+                }
+                if (end == 0 && !eof) {
+                    // a line longer than the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+
+                if (end > 0) {
+                    Chunk part = new Chunk(file.toString(), offset, offset + end);
+                    part.buffer = ByteBuffer.wrap(block, 0, end);
+                    part.linesBefore = linesBefore;
+                    chunks.add(part);
+                    inFlight.acquire();
+                    results.add(pool.submit(() -> {
+                        try {
+                            return readChunk(null, part, supplier.get());
+                        } catch (RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            part.buffer = null;
+                            inFlight.release();
+                        }
+                    }));
+                    linesBefore += countNewlines(block, end);
+                    offset += end;
+                }
+
+                // carry the partial last line over to the next block
+                byte[] next = new byte[Math.max(chunkSize, filled - end)];
+                System.arraycopy(block, end, next, 0, filled - end);
+                filled -= end;
+                block = next;
+            }
+        }
+    }
+
+    private static int firstNewline(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastNewline(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long countNewlines(byte[] bytes, int length) {
+        long lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the malformed rows of the chunks to the quarantine with their line numbers. The line numbers
+     * of a file are known up to its first chunk which was not read to the end
+     *
+     */
+    private void writeRejects(List<Chunk> chunks) {
+        String file = null;
+        long lineNumber = 0;
+        boolean counted = false;
+        for (Chunk chunk : chunks) {
+            if (!chunk.file.equals(file)) {
+                file = chunk.file;
+                lineNumber = 1;         // header row
+                counted = true;
+            }
+            if (!counted) {
+                continue;
+            }
+            if (chunk.rejects != null) {
+                for (int r = 0; r < chunk.rejects.size(); r++) {
+                    quarantine.write(file, lineNumber + chunk.rejectLines.get(r), chunk.rejects.get(r), chunk.reasons.get(r));
+                }
+            }
+            lineNumber += chunk.lines;
+            counted = chunk.complete;
+        }
+    }
+
+    /**
+     * Warns of the files holding rows created on another day than the one in their name
+     *
+     */
+    private static void warnOutsideDay(List<Chunk> chunks) {
+        String file = null;
+        long rows = 0;
+        for (int c = 0; c <= chunks.size(); c++) {
+            Chunk chunk = c < chunks.size() ? chunks.get(c) : null;
+            if (chunk == null || !chunk.file.equals(file)) {
+                if (rows > 0) {
+                    System.out.println("Warning: " + rows + " rows of " + file + " were created on another day than the " +
+                                       "one in its name. A query starting after that day leaves them out");
+                }
+                file = chunk == null ? null : chunk.file;
+                rows = 0;
+            }
+            if (chunk != null) {
+                rows += chunk.outsideDay;
+            }
+        }
+    }
+
+    /**
+     * Newline aligned part of a file, with the lines counted and the malformed rows found while reading it
+     *
+     */
+    private static class Chunk {
+        private final String file;
+        private final long start;
+        private final long end;
+        private final long dayStart;            // of the day in the file name, NONE if it holds no date
+        private ByteBuffer buffer;              // content of a decompressed chunk, null for a mapped one
+        private long linesBefore = -1;          // lines of the file before the chunk, if known
+        private long lines;
+        private volatile boolean complete;
+        private long outsideDay;                // rows created on another day than dayStart
+        private List<Long> rejectLines;
+        private List<String> rejects;
+        private List<String> reasons;
+
+        private Chunk(String file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.dayStart = PartitionedDataset.getDayStart(Paths.get(file));
+        }
+
+        private void reject(String row, String reason) {
+            if (rejects == null) {
+                rejectLines = new ArrayList<>();
+                rejects = new ArrayList<>();
+                reasons = new ArrayList<>();
+            }
+            rejectLines.add(lines);
+            rejects.add(row);
+            reasons.add(reason);
+        }
+    }
+
+    /**
+     * Decodes a line holding non ASCII characters with the platform charset, as {@link InputIngester} does
+     *
+     */
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    /**
+     * Returns the number of the line starting at the given position, the first line being 1.
+     * Only used to report a malformed row, so the newlines before it are counted from the start
+     *
+     */
+    private static long lineNumber(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long lines = 1;
+        for (long at = 0; at < position; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), position - at));
+            int read = channel.read(buffer, at);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            at += read;
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the offset after the first newline at or after the given position, or the file size
+     *
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
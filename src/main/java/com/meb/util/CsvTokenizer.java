@@ -0,0 +1,265 @@
+package com.meb.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Hand written tokenizer for a single transaction csv line.
+ * The field boundaries are recorded as offsets into the line, so splitting and trimming
+ * do not allocate. Fields are only turned into objects when they are read.
+ *
+ * The trimming rules follow line.trim().split(",") followed by trim() on every field:
+ * surrounding whitespace is ignored and trailing empty fields are dropped.
+ *
+ * An instance is reusable but not thread safe.
+ *
+ * @author sundeep
+ *
+ */
+public class CsvTokenizer {
+
+    /** Number of columns in the transaction file */
+    public static final int MAX_FIELDS = 7;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final int[] rawStarts = new int[MAX_FIELDS];
+    private final int[] rawEnds = new int[MAX_FIELDS];
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private CharSequence line;
+    private int fieldCount;
+
+    /**
+     * Splits the given line into fields
+     *
+     * @param line - a line of the transaction file
+     * @return - number of fields found
+     */
+    public int tokenize(CharSequence line) {
+        return tokenize(line, 0, line.length());
+    }
+
+    /**
+     * Splits the given range of a character sequence into fields
+     *
+     * @param line - characters holding the line
+     * @param from - index of the first character of the line
+     * @param to - index after the last character of the line
+     * @return - number of fields found
+     */
+    public int tokenize(CharSequence line, int from, int to) {
+        this.line = line;
+        this.fieldCount = 0;
+
+        // trim the line
+        while (from < to && line.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && line.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return 0;
+        }
+
+        int fields = 0;
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || line.charAt(i) == ',') {
+                if (fields < MAX_FIELDS) {
+                    rawStarts[fields] = fieldStart;
+                    rawEnds[fields] = i;
+                }
+                fields++;
+                fieldStart = i + 1;
+            }
+        }
+        fields = Math.min(fields, MAX_FIELDS);
+
+        // split drops trailing empty fields
+        while (fields > 0 && rawStarts[fields - 1] == rawEnds[fields - 1]) {
+            fields--;
+        }
+
+        for (int f = 0; f < fields; f++) {
+            int s = rawStarts[f];
+            int e = rawEnds[f];
+            while (s < e && line.charAt(s) <= ' ') {
+                s++;
+            }
+            while (e > s && line.charAt(e - 1) <= ' ') {
+                e--;
+            }
+            starts[f] = s;
+            ends[f] = e;
+        }
+        fieldCount = fields;
+        return fields;
+    }
+
+    /**
+     * Returns the number of fields of the last tokenized line
+     *
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the line which was last tokenized
+     *
+     */
+    public CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the index of the first character of the trimmed field
+     *
+     */
+    public int start(int field) {
+        checkField(field);
+        return starts[field];
+    }
+
+    /**
+     * Returns the index after the last character of the trimmed field
+     *
+     */
+    public int end(int field) {
+        checkField(field);
+        return ends[field];
+    }
+
+    /**
+     * Checks if the field is empty before trimming, i.e. two adjacent commas
+     *
+     */
+    public boolean isRawEmpty(int field) {
+        checkField(field);
+        return rawStarts[field] == rawEnds[field];
+    }
+
+    /**
+     * Returns the trimmed field as a string
+     *
+     */
+    public String getString(int field) {
+        checkField(field);
+        return line.subSequence(starts[field], ends[field]).toString();
+    }
+
+    /**
+     * Parses the trimmed field as a {@link TransactionType} without creating a string.
+     * The match is case sensitive like {@link TransactionType#valueOf(String)}
+     *
+     * @throws IllegalArgumentException - if the field is not a transaction type
+     */
+    public TransactionType getTxnType(int field) {
+        checkField(field);
+        int type = typeOf(field);
+        if (type < 0) {
+            throw new IllegalArgumentException("No transaction type " + getString(field));
+        }
+        return TYPES[type];
+    }
+
+    /**
+     * Checks that the last tokenized line has the fields of a transaction row: at least six fields,
+     * a known transaction type, and a seventh field for a reversal. Only the field count and the type
+     * are looked at, the other values are checked when they are parsed
+     *
+     * @return - the reason the line is not a transaction row, null if it is one
+     */
+    public String getTransactionError() {
+        if (fieldCount < 6) {
+            return "Expected at least 6 fields, found " + fieldCount;
+        }
+        int type = typeOf(5);
+        if (type < 0) {
+            return "No transaction type " + getString(5);
+        }
+        if (TYPES[type] == TransactionType.REVERSAL && fieldCount < 7) {
+            return "Reversal without a related transaction";
+        }
+        return null;
+    }
+
+    /**
+     * Parses the trimmed field as an amount in minor units (cents), e.g. 10.5 is 1050.
+     * Amounts with a fraction of a cent are not rounded but rejected, trailing zeros such as 10.500 are accepted
+     *
+     * @throws NumberFormatException - if the field is not a plain decimal number or has a fraction of a cent
+     * @throws ArithmeticException - if the amount does not fit in a long
+     */
+    public long getMinorUnits(int field) {
+        checkField(field);
+        int s = starts[field];
+        int e = ends[field];
+        int i = s;
+        boolean negative = false;
+        if (i < e && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < e; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                units = units * 10 + (c - '0');
+                digits++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            } else {
+                break;
+            }
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (i < e || digits == 0 || digits > 16 || scale > 2) {
+            BigDecimal exact = new BigDecimal(getString(field)).movePointRight(2);
+            if (exact.signum() != 0 && exact.stripTrailingZeros().scale() > 0) {
+                throw new NumberFormatException("Amount has a fraction of a cent: " + getString(field));
+            }
+            return exact.setScale(0, RoundingMode.UNNECESSARY).longValueExact();
+        }
+        for (scale = Math.max(scale, 0); scale < 2; scale++) {
+            units *= 10;
+        }
+        return negative ? -units : units;
+    }
+
+    private int typeOf(int field) {
+        int s = starts[field];
+        int len = ends[field] - s;
+        for (int i = 0; i < TYPES.length; i++) {
+            String name = TYPES[i].name();
+            if (name.length() == len && regionMatches(s, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (line.charAt(offset + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount) {
+            throw new ArrayIndexOutOfBoundsException("Field " + field + " is missing, line has " + fieldCount + " fields");
+        }
+    }
+}
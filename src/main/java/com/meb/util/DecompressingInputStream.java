@@ -0,0 +1,208 @@
+package com.meb.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stream of the decompressed content of a gzip file, inflated ahead of the reader by a thread of its own.
+ * The decompressing thread fills blocks from a small fixed pool and hands them over through a bounded queue,
+ * and the reader returns them once they are read, so inflating the next blocks overlaps with parsing the
+ * current one while the memory held stays at the size of the pool.
+ *
+ * Concatenated gzip members, as written by parallel compressors, are read one after the other.
+ *
+ * Not thread safe, it is read by a single thread.
+ *
+ * @author sundeep
+ *
+ */
+public class DecompressingInputStream extends InputStream {
+
+    /** Suffix of gzip compressed transaction files */
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final int BLOCK_SIZE = 1 << 18;
+    private static final int BLOCKS = 8;
+    private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+    private static final Block END = new Block(0);
+
+    private final InputStream source;
+    private final Thread inflater;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS);
+    private final BlockingQueue<Block> full = new ArrayBlockingQueue<>(BLOCKS + 1);
+    private volatile IOException error;
+    private volatile boolean closed;
+
+    private Block current;
+    private int position;
+    private boolean ended;
+
+    /**
+     * Starts decompressing a gzip file
+     *
+     * @param file - the compressed file
+     * @throws IOException - if the file cannot be opened or has no gzip header
+     */
+    public DecompressingInputStream(Path file) throws IOException {
+        this(new GZIPInputStream(Files.newInputStream(file), INFLATER_BUFFER_SIZE), file.getFileName().toString());
+    }
+
+    /**
+     * Starts reading a stream ahead of the reader
+     *
+     * @param source - the stream which does the decompression
+     * @param name - name of the source, used to name the thread
+     */
+    DecompressingInputStream(InputStream source, String name) {
+        this.source = source;
+        for (int i = 0; i < BLOCKS; i++) {
+            free.add(new Block(BLOCK_SIZE));
+        }
+        this.inflater = new Thread(this::inflate, "meb-inflate-" + name);
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    /**
+     * Opens a transaction file for reading, decompressing it on another thread if it is gzip compressed
+     *
+     */
+    public static InputStream open(Path file) throws IOException {
+        return isCompressed(file.toString()) ? new DecompressingInputStream(file) : Files.newInputStream(file);
+    }
+
+    /**
+     * Returns true if the file name is that of a gzip compressed file
+     *
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.regionMatches(true, fileName.length() - GZIP_SUFFIX.length(), GZIP_SUFFIX, 0, GZIP_SUFFIX.length());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!next()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int n = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    /**
+     * Stops the decompressing thread and closes the compressed file
+     *
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        inflater.interrupt();
+        try {
+            inflater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * Makes sure the current block has bytes left, taking the next one if needed
+     *
+     * @return - false at the end of the stream
+     */
+    private boolean next() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (!ended && (current == null || position == current.length)) {
+            if (current != null) {
+                free.add(current);
+                current = null;
+            }
+            try {
+                Block block = full.take();
+                if (block == END) {
+                    ended = true;
+                } else {
+                    current = block;
+                    position = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            }
+        }
+        if (ended && error != null) {
+            throw error;
+        }
+        return !ended;
+    }
+
+    /**
+     * Body of the decompressing thread: fills free blocks until the source ends, then queues the end marker
+     *
+     */
+    private void inflate() {
+        try {
+            while (!closed) {
+                Block block = free.take();
+                block.length = 0;
+                int read = 0;
+                while (block.length < block.data.length &&
+                        (read = source.read(block.data, block.length, block.data.length - block.length)) >= 0) {
+                    block.length += read;
+                }
+                if (block.length > 0) {
+                    full.put(block);
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            // closed by the reader
+            return;
+        }
+        full.offer(END);
+    }
+
+    /**
+     * Buffer of decompressed bytes, the first length of which are filled
+     *
+     */
+    private static class Block {
+        private final byte[] data;
+        private int length;
+
+        private Block(int size) {
+            this.data = new byte[size];
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.meb.util;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import com.meb.metrics.Metrics;
+import com.meb.store.AccountIndex;
+import com.meb.store.IdDictionary;
+import com.meb.store.TransactionStore;
 import com.meb.vo.TransactionRecord;
 import com.meb.vo.TransactionRecord.TransactionType;
 
@@ -23,6 +30,8 @@ import com.meb.vo.TransactionRecord.TransactionType;
  *
  */
 public class InputIngester {
+
+    private static final int READER_BUFFER_SIZE = 1 << 16;
     
     /**
      * Reads the csv file and converts it into a list
@@ -31,39 +40,271 @@ public class InputIngester {
      * @return - List of {@link TransactionRecord}
      */
     public static List<TransactionRecord> readTransactions(String fileName) {
-        Function<String, TransactionRecord> mapToTransaction = (line) -> {
-            TransactionRecord txnRecord = new TransactionRecord();
-            if (!line.trim().isEmpty()) {
-                String[] txn = line.trim().split(",");
-
-                txnRecord.setTransactionId(txn[0].trim());
-                txnRecord.setFromAccountId(txn[1].trim());
-                txnRecord.setToAccountId(txn[2].trim());
-                if (!txn[3].isEmpty()) {
-                    DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-                    txnRecord.setCreatedAt(LocalDateTime.parse(txn[3].trim(), df));
-                }
-                txnRecord.setAmount(Double.valueOf(txn[4].trim()));
-                txnRecord.setTxnType(TransactionType.valueOf(txn[5].trim()));
-                if (TransactionType.REVERSAL.equals(TransactionType.valueOf(txn[5].trim()))) {
-                    txnRecord.setOrigTransactionid(txn[6].trim());
-                }
-            }            
-            return txnRecord;
-        };
-        
         List<TransactionRecord> inputs = new ArrayList<TransactionRecord>();
-        try (Stream<String> lines = Files.lines(Paths.get(fileName), 
-                                                Charset.defaultCharset())) {
-            inputs = lines.skip(1)     // skip header row
-                          .filter(line -> !line.trim().isEmpty())      // skip empty line
-                          .map(mapToTransaction)
-                          .collect(Collectors.toList());
+        streamTransactions(fileName, inputs::add);
+        return inputs;
+    }
+
+    /**
+     * Reads the csv file line by line and hands each record to the consumer as soon as it is parsed.
+     * The records are not retained, so memory usage does not grow with the file size
+     * 
+     * @param fileName - the input transaction file
+     * @param consumer - receives every {@link TransactionRecord} in file order
+     * @return - number of records read
+     */
+    public static long streamTransactions(String fileName, Consumer<TransactionRecord> consumer) {
+        TimestampCodec codec = new TimestampCodec();
+        return streamLines(fileName, tokenizer -> consumer.accept(toTransactionRecord(tokenizer, codec)));
+    }
+
+    /**
+     * Reads the csv file into a columnar {@link TransactionStore}. When a snapshot of the file written by
+     * {@link #writeSnapshot(String)} is newer than the csv, the store is loaded from it instead of parsing the csv.
+     * A directory or glob of partition files, see {@link PartitionedDataset}, is loaded into one store
+     * 
+     * @param fileName - the input transaction file, or a directory or glob of them
+     * @return - store holding every record of the file
+     */
+    public static TransactionStore loadStore(String fileName) {
+        if (PartitionedDataset.isDataset(fileName)) {
+            TransactionStore store = new TransactionStore();
+            TimestampCodec codec = new TimestampCodec();
+            for (Path partition : PartitionedDataset.resolve(fileName)) {
+                streamLines(partition.toString(), tokenizer -> addToStore(store, tokenizer, codec));
+            }
+            store.trimToSize();
+            return store;
+        }
+        TransactionStore store = readSnapshot(fileName);
+        return store != null ? store : loadStore(fileName, new IdDictionary(), new IdDictionary());
+    }
+
+    /**
+     * Loads the snapshot of a csv file written by {@link #writeSnapshot(String)}
+     * 
+     * @param fileName - the input transaction file
+     * @return - the store, or null if there is no snapshot newer than the csv or it cannot be read
+     */
+    public static TransactionStore readSnapshot(String fileName) {
+        try {
+            return TransactionStore.read(Paths.get(fileName + TransactionStore.FILE_SUFFIX), Paths.get(fileName));
+        } catch (IOException e) {
+            System.out.println("Error while reading snapshot file, parsing the csv : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses the csv file and writes a binary snapshot of it next to it, which later loads pick up
+     * 
+     * @param fileName - the input transaction file
+     * @return - the parsed store
+     */
+    public static TransactionStore writeSnapshot(String fileName) throws IOException {
+        TransactionStore store = loadStore(fileName, new IdDictionary(), new IdDictionary());
+        store.write(Paths.get(fileName + TransactionStore.FILE_SUFFIX), Paths.get(fileName));
+        return store;
+    }
+
+    /**
+     * Reads the csv file into a columnar {@link TransactionStore} whose ids are interned in the given dictionaries.
+     * Passing the same dictionaries for several files gives codes which can be compared across the stores
+     * 
+     * @param fileName - the input transaction file
+     * @param accountIds - dictionary of the account ids
+     * @param txnIds - dictionary of the transaction ids
+     * @return - store holding every record of the file
+     */
+    public static TransactionStore loadStore(String fileName, IdDictionary accountIds, IdDictionary txnIds) {
+        TransactionStore store = new TransactionStore(accountIds, txnIds);
+        TimestampCodec codec = new TimestampCodec();
+        streamLines(fileName, tokenizer -> addToStore(store, tokenizer, codec));
+        store.trimToSize();
+        return store;
+    }
+
+    /**
+     * Returns the per account time index of the csv file. The index is read from its side file when that was
+     * written for the current content of the csv, otherwise it is built and the side file is (re)written.
+     * The index of a directory or glob of partition files is built without a side file
+     * 
+     * @param fileName - the input transaction file, or a directory or glob of them
+     * @return - index answering balance queries for the file
+     */
+    public static AccountIndex loadIndex(String fileName) {
+        if (PartitionedDataset.isDataset(fileName)) {
+            return AccountIndex.build(loadStore(fileName));
+        }
+        Path csvFile = Paths.get(fileName);
+        Path indexFile = Paths.get(fileName + AccountIndex.FILE_SUFFIX);
+        try {
+            AccountIndex index = AccountIndex.read(indexFile, csvFile);
+            if (index != null) {
+                return index;
+            }
         } catch (IOException e) {
+            System.out.println("Error while reading index file, rebuilding it : " + e.getMessage());
+        }
+
+        AccountIndex index = AccountIndex.build(loadStore(fileName));
+        try {
+            index.write(indexFile, csvFile);
+        } catch (IOException e) {
+            System.out.println("Error while writing index file : " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Reads the csv file line by line and hands each non empty line to the consumer after tokenizing it.
+     * The same tokenizer instance is passed for every line. Malformed rows are handled by the
+     * {@link Quarantine#getDefault() default quarantine}
+     * 
+     * @param fileName - the input transaction file
+     * @param consumer - receives the tokenized lines in file order
+     * @return - number of lines read
+     */
+    public static long streamLines(String fileName, Consumer<CsvTokenizer> consumer) {
+        return streamLines(fileName, consumer, Quarantine.getDefault());
+    }
+
+    /**
+     * Reads the csv file line by line and hands each non empty line to the consumer after tokenizing it.
+     * The file can be gzip compressed. A line the consumer throws a {@link MalformedRowException} for is handed to the quarantine
+     * 
+     * @param fileName - the input transaction file
+     * @param consumer - receives the tokenized lines in file order
+     * @param quarantine - handles the malformed rows
+     * @return - number of lines consumed, not counting the malformed ones
+     */
+    public static long streamLines(String fileName, Consumer<CsvTokenizer> consumer, Quarantine quarantine) {
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        long count = 0;
+        long lineNumber = 1;        // header row
+        int uncounted = 0;
+        boolean lenient = quarantine.isLenient();
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        try (Stream<String> lines = lines(Paths.get(fileName))) {
+            Iterator<String> it = lines.skip(1).iterator();     // skip header row
+            while (it.hasNext()) {
+                String line = it.next();
+                lineNumber++;
+                if (tokenizer.tokenize(line) == 0) {      // skip empty line
+                    continue;
+                }
+                if (lenient) {
+                    uncounted++;
+                }
+                try {
+                    consumer.accept(tokenizer);
+                    count++;
+                } catch (MalformedRowException e) {
+                    quarantine.reject(fileName, lineNumber, line, e, uncounted);
+                    uncounted = 0;
+                }
+                if (uncounted == Quarantine.COUNT_BATCH) {
+                    quarantine.count(uncounted);
+                    uncounted = 0;
+                }
+            }
+            quarantine.count(uncounted);
+        } catch (IOException | UncheckedIOException e) {
             System.out.println("Error while reading input file : " + e.getMessage());
             e.printStackTrace();
         }
+        if (Metrics.ENABLED && quarantine.isMetered()) {
+            long nanos = System.nanoTime() - started;
+            Metrics.get().addParsed(count, new File(fileName).length(), nanos);
+            Metrics.get().addIngestTime(nanos);
+        }
         
-        return inputs;
+        return count;
+    }
+
+    /**
+     * Returns the lines of a csv file. A gzip compressed file is decompressed on another thread while
+     * the lines are read, see {@link DecompressingInputStream}
+     * 
+     */
+    private static Stream<String> lines(Path file) throws IOException {
+        if (!DecompressingInputStream.isCompressed(file.toString())) {
+            return Files.lines(file, Charset.defaultCharset());
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new DecompressingInputStream(file),
+                                                                         Charset.defaultCharset()), READER_BUFFER_SIZE);
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Converts a single tokenized csv line into a {@link TransactionRecord}
+     * 
+     * @throws MalformedRowException - if the line is not a valid transaction row
+     */
+    static TransactionRecord toTransactionRecord(CsvTokenizer tokenizer, TimestampCodec codec) {
+        TransactionRecord txnRecord = new TransactionRecord();
+        if (tokenizer.getFieldCount() > 0) {
+            checkRow(tokenizer);
+            try {
+                txnRecord.setTransactionId(tokenizer.getString(0));
+                txnRecord.setFromAccountId(tokenizer.getString(1));
+                txnRecord.setToAccountId(tokenizer.getString(2));
+                if (!tokenizer.isRawEmpty(3)) {
+                    txnRecord.setCreatedAtEpochSecond(codec.parse(tokenizer.getLine(), tokenizer.start(3), tokenizer.end(3)));
+                }
+                txnRecord.setAmountMinorUnits(tokenizer.getMinorUnits(4));
+                txnRecord.setTxnType(tokenizer.getTxnType(5));
+                if (TransactionType.REVERSAL.equals(txnRecord.getTxnType())) {
+                    txnRecord.setOrigTransactionid(tokenizer.getString(6));
+                }
+            } catch (RuntimeException e) {
+                throw new MalformedRowException(e);
+            }
+        }            
+        return txnRecord;
+    }
+
+    private static void checkRow(CsvTokenizer tokenizer) {
+        String error = tokenizer.getTransactionError();
+        if (error != null) {
+            throw new MalformedRowException(error);
+        }
+    }
+
+    /**
+     * Adds a single tokenized csv line to the store. The ids are interned straight from the line without creating strings.
+     * The values are parsed before any id is interned, so a malformed line leaves the store as it was
+     * 
+     * @return - the index of the row
+     * @throws MalformedRowException - if the line is not a valid transaction row
+     */
+    public static int addToStore(TransactionStore store, CsvTokenizer tokenizer, TimestampCodec codec) {
+        CharSequence line = tokenizer.getLine();
+        checkRow(tokenizer);
+        long createdAt;
+        long amount;
+        TransactionType txnType;
+        try {
+            createdAt = tokenizer.isRawEmpty(3) ? TimestampCodec.NONE 
+                                                : codec.parse(line, tokenizer.start(3), tokenizer.end(3));
+            amount = tokenizer.getMinorUnits(4);
+            txnType = tokenizer.getTxnType(5);
+        } catch (RuntimeException e) {
+            throw new MalformedRowException(e);
+        }
+        IdDictionary accountIds = store.getAccountIds();
+        IdDictionary txnIds = store.getTxnIds();
+        int txnId = txnIds.code(line, tokenizer.start(0), tokenizer.end(0));
+        int fromAccountId = accountIds.code(line, tokenizer.start(1), tokenizer.end(1));
+        int toAccountId = accountIds.code(line, tokenizer.start(2), tokenizer.end(2));
+        int origTxnId = TransactionType.REVERSAL.equals(txnType) ? txnIds.code(line, tokenizer.start(6), tokenizer.end(6))
+                                                                 : TransactionStore.NO_TXN;
+        return store.add(txnId, fromAccountId, toAccountId, createdAt, amount, txnType, origTxnId);
     }
 }
@@ -0,0 +1,59 @@
+package com.meb.util;
+
+/**
+ * Thrown when a row of a transaction file cannot be parsed. The reason names what is wrong with the row,
+ * and the readers which know where the row is add its file and line, see {@link #at(String, String)}
+ *
+ * @author sundeep
+ *
+ */
+public class MalformedRowException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    /**
+     * @param reason - what is wrong with the row
+     */
+    public MalformedRowException(String reason) {
+        super(reason);
+        this.reason = reason;
+    }
+
+    /**
+     * @param cause - the error raised while parsing a value of the row
+     */
+    public MalformedRowException(RuntimeException cause) {
+        this(cause.getClass().getSimpleName() + ": " + cause.getMessage(), cause);
+    }
+
+    private MalformedRowException(String reason, Throwable cause) {
+        super(reason, cause);
+        this.reason = reason;
+    }
+
+    private MalformedRowException(String message, String reason, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns what is wrong with the row, without its position
+     *
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the same error with the position of the row in its message
+     *
+     * @param file - the file holding the row
+     * @param position - where the row is in the file, e.g. "line 12"
+     */
+    public MalformedRowException at(String file, String position) {
+        return new MalformedRowException("Malformed row in " + file + " at " + position + " : " + reason, reason,
+                                         getCause() != null ? getCause() : this);
+    }
+}
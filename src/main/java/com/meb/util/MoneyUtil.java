@@ -0,0 +1,43 @@
+package com.meb.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Utility class for amounts held as long minor units (cents).
+ * Amounts are summed as exact longs and converted to decimals only when they are shown
+ *
+ * @author sundeep
+ *
+ */
+public class MoneyUtil {
+
+    /** Number of decimal places of the minor unit */
+    public static final int SCALE = 2;
+
+    /**
+     * Converts a decimal amount into minor units, rounding half even below a cent
+     *
+     * @throws ArithmeticException - if the amount does not fit in a long
+     */
+    public static long toMinorUnits(double amount) {
+        return BigDecimal.valueOf(amount).setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts minor units into an exact decimal amount
+     *
+     */
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Formats minor units as the balance is shown to the user, e.g. -$25.00
+     *
+     */
+    public static String format(long minorUnits) {
+        String sign = minorUnits < 0 ? "-" : "";
+        return String.format(sign + "$%.2f", toDecimal(minorUnits).abs());
+    }
+}
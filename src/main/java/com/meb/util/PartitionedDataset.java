@@ -0,0 +1,154 @@
+package com.meb.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Resolves the transaction input given by the user into the csv files, or partitions, which hold it.
+ * The input can be
+ * <ul>
+ * <li>a single csv file</li>
+ * <li>a directory, whose csv files are the partitions</li>
+ * <li>a glob in the file name part, e.g. data/transactions-2018-10-*.csv</li>
+ * </ul>
+ * Partitions are returned in day order, see below, then by path.
+ *
+ * A partition whose file name holds a date, as yyyy-MM-dd or yyyyMMdd, is taken to hold the transactions
+ * created on that day. Such partitions can be left out of a query which starts after the day: none of their
+ * payments is in range, and their reversals cancel payments of that day or earlier. Partitions of later
+ * days are always kept, as they can hold reversals of payments in range.
+ *
+ * The date in the name is not checked against the rows before pruning, only when a partition is read:
+ * {@link ChunkedFileReader} warns of the rows of a partition created on another day. A row of a pruned
+ * partition created on a later day, e.g. a file named after the wrong day, is left out of the balance.
+ *
+ * Pruning is only used by the single query, which reports no orphan reversals. The report, batch and serve
+ * modes read every partition, so a reversal is never taken for an orphan because its payment was pruned.
+ *
+ * @author sundeep
+ *
+ */
+public class PartitionedDataset {
+
+    private static final Pattern DATE = Pattern.compile("(?<!\\d)(\\d{4})-?(\\d{2})-?(\\d{2})(?!\\d)");
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    /**
+     * Returns the csv files of the input, an empty list if there are none
+     *
+     * @param input - a csv file, a directory or a glob
+     */
+    public static List<Path> resolve(String input) {
+        List<Path> files = new ArrayList<>();
+        if (input == null || input.isEmpty()) {
+            return files;
+        }
+        try {
+            if (isGlob(input)) {
+                int separator = Math.max(input.lastIndexOf('/'), input.lastIndexOf(File.separatorChar));
+                Path dir = separator < 0 ? Paths.get(".") : Paths.get(input.substring(0, separator + 1));
+                String glob = input.substring(separator + 1);
+                if (isGlob(dir.toString()) || !Files.isDirectory(dir)) {
+                    return files;
+                }
+                addCsvFiles(dir, glob, files);
+            } else if (Files.isDirectory(Paths.get(input))) {
+                addCsvFiles(Paths.get(input), "*", files);
+            } else if (Files.exists(Paths.get(input)) && ValidatorUtil.isTransactionFileCSV(input)) {
+                files.add(Paths.get(input));
+            }
+        } catch (IOException e) {
+            System.out.println("Error while listing input files : " + e.getMessage());
+        }
+        files.sort(Comparator.comparingLong(PartitionedDataset::getDayStart).thenComparing(Comparator.naturalOrder()));
+        return files;
+    }
+
+    /**
+     * Returns true if the input is a directory or a glob rather than a single file
+     *
+     */
+    public static boolean isDataset(String input) {
+        return isGlob(input) || Files.isDirectory(Paths.get(input));
+    }
+
+    /**
+     * Leaves out the partitions which cannot affect a balance over (from, to)
+     *
+     * @param partitions - the partition files
+     * @param from - start of the transaction range in epoch seconds (exclusive)
+     * @return - the partitions to read, in the same order
+     */
+    public static List<Path> prune(List<Path> partitions, long from) {
+        List<Path> kept = new ArrayList<>();
+        for (Path partition : partitions) {
+            long dayStart = getDayStart(partition);
+            // every payment of the partition was created at or before the last second of its day
+            if (dayStart == TimestampCodec.NONE || dayStart + SECONDS_PER_DAY - 1 > from) {
+                kept.add(partition);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Returns true if the record was created on the day starting at dayStart, or has no creation time
+     *
+     */
+    static boolean isInDay(TransactionRecord rec, long dayStart) {
+        long createdAt = rec.getCreatedAtEpochSecond();
+        return createdAt == TimestampCodec.NONE || (createdAt >= dayStart && createdAt < dayStart + SECONDS_PER_DAY);
+    }
+
+    /**
+     * Returns the start, in epoch seconds, of the day in the file name of a partition,
+     * {@link TimestampCodec#NONE} if the name holds no date
+     *
+     */
+    public static long getDayStart(Path partition) {
+        Matcher matcher = DATE.matcher(partition.getFileName().toString());
+        while (matcher.find()) {
+            try {
+                LocalDate day = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                                             Integer.parseInt(matcher.group(3)));
+                return TimestampCodec.toEpochSecond(day.atStartOfDay());
+            } catch (DateTimeException e) {
+                // not a date, look further
+            }
+        }
+        return TimestampCodec.NONE;
+    }
+
+    private static void addCsvFiles(Path dir, String glob, List<Path> files) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && ValidatorUtil.isTransactionFileCSV(file.toString())) {
+                    files.add(file);
+                }
+            }
+        }
+    }
+
+    private static boolean isGlob(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
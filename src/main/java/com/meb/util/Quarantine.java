@@ -0,0 +1,259 @@
+package com.meb.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.meb.metrics.Metrics;
+
+/**
+ * Decides what happens to the rows of the transaction files which cannot be parsed.
+ *
+ * The {@link #STRICT} quarantine fails the read on the first malformed row, naming its file and line.
+ * A lenient quarantine instead writes the row to a csv of file, line, reason and row, and the read goes
+ * on without it. Reading is given up once more than the allowed fraction of the rows is malformed, so
+ * a file in the wrong layout fails within its first rows rather than after minutes of work. Until
+ * {@value #MIN_ROWS} rows are counted the fraction is taken of {@value #MIN_ROWS}, so a few bad rows at
+ * the start of a file do not give it up.
+ *
+ * Valid rows cost nothing extra: readers count rows in batches of {@value #COUNT_BATCH}, or once per read
+ * for the follower, and only a malformed row reaches the quarantine. It comes with the rows its reader has
+ * not counted yet, so the fraction is always taken of the rows read so far. Lenient mode is switched on with -Dmeb.quarantine=rejects.csv, the allowed fraction is
+ * set with -Dmeb.maxErrorRate=0.01.
+ *
+ * @author sundeep
+ *
+ */
+public class Quarantine {
+
+    /** System property naming the quarantine file, which switches lenient mode on */
+    public static final String FILE_PROPERTY = "meb.quarantine";
+
+    /** System property with the fraction of malformed rows above which reading is given up */
+    public static final String MAX_ERROR_RATE_PROPERTY = "meb.maxErrorRate";
+
+    public static final double DEFAULT_MAX_ERROR_RATE = 0.01;
+
+    /** Header row of the quarantine file */
+    public static final String HEADER = "file, line, reason, row";
+
+    /** Rows a reader counts before adding them to the quarantine */
+    public static final int COUNT_BATCH = 4096;
+
+    static final long MIN_ROWS = 1000;
+
+    /** Fails the read on the first malformed row */
+    public static final Quarantine STRICT = new Quarantine(null, null, 0);
+
+    private static final Writer NO_OUTPUT = new Writer() {
+        @Override
+        public void write(char[] chars, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static Quarantine defaultQuarantine;
+
+    private final Writer out;
+    private final String fileName;
+    private final double maxErrorRate;
+    private final boolean metered;
+    private final LongAdder rows = new LongAdder();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean aborted;
+
+    /**
+     * Creates a lenient quarantine which writes the malformed rows to the given writer
+     *
+     * @param out - receives the quarantine csv
+     * @param fileName - name of the quarantine file, used in messages
+     * @param maxErrorRate - fraction of malformed rows above which reading is given up
+     */
+    public Quarantine(Writer out, String fileName, double maxErrorRate) {
+        this(out, fileName, maxErrorRate, true);
+    }
+
+    private Quarantine(Writer out, String fileName, double maxErrorRate, boolean metered) {
+        this.out = out;
+        this.fileName = fileName;
+        this.maxErrorRate = maxErrorRate;
+        this.metered = metered;
+    }
+
+    /**
+     * Returns a strict quarantine whose reads are left out of the ingestion {@link Metrics}, for a file which
+     * holds no transactions
+     *
+     * @param fileName - the file read
+     */
+    public static Quarantine unmetered(String fileName) {
+        return new Quarantine(null, fileName, 0, false);
+    }
+
+    /**
+     * Opens a lenient quarantine writing to the given file
+     *
+     */
+    public static Quarantine open(Path file, double maxErrorRate) throws IOException {
+        Writer out = Files.newBufferedWriter(file, Charset.defaultCharset());
+        out.write(HEADER);
+        out.write('\n');
+        out.flush();
+        return new Quarantine(out, file.toString(), maxErrorRate);
+    }
+
+    /**
+     * Returns the quarantine configured with the system properties, {@link #STRICT} if none is
+     *
+     */
+    public static synchronized Quarantine getDefault() {
+        if (defaultQuarantine == null) {
+            defaultQuarantine = STRICT;
+            String file = System.getProperty(FILE_PROPERTY);
+            if (file != null && !file.isEmpty()) {
+                try {
+                    double maxErrorRate = Double.parseDouble(System.getProperty(MAX_ERROR_RATE_PROPERTY, 
+                                                                                String.valueOf(DEFAULT_MAX_ERROR_RATE)));
+                    defaultQuarantine = open(Paths.get(file), maxErrorRate);
+                } catch (IOException | NumberFormatException e) {
+                    System.out.println("Error while opening quarantine file, malformed rows will fail the read : " + e.getMessage());
+                }
+            }
+        }
+        return defaultQuarantine;
+    }
+
+    /**
+     * Returns a quarantine for reading again the files this one has seen. A lenient quarantine gives one
+     * which skips the malformed rows without writing them again, and the reads are left out of the
+     * ingestion {@link Metrics} as they were counted the first time
+     *
+     */
+    public Quarantine forReread() {
+        return new Quarantine(isLenient() ? NO_OUTPUT : null, fileName, maxErrorRate, false);
+    }
+
+    /**
+     * Returns true if the reads with this quarantine add to the ingestion {@link Metrics}
+     *
+     */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * Returns true if malformed rows are written to a file rather than failing the read
+     *
+     */
+    public boolean isLenient() {
+        return out != null;
+    }
+
+    /**
+     * Adds rows read, valid or not
+     *
+     */
+    public void count(long rows) {
+        this.rows.add(rows);
+    }
+
+    /**
+     * Handles a malformed row. A strict quarantine throws the error with the position of the row,
+     * a lenient one writes the row
+     *
+     * @param file - the file holding the row
+     * @param line - line number of the row, the header being line 1
+     * @param row - the row as read
+     * @param error - what is wrong with it
+     * @param uncounted - rows read by the caller and not counted yet, this one included
+     * @throws IllegalStateException - once too many rows are malformed
+     */
+    public void reject(String file, long line, CharSequence row, MalformedRowException error, long uncounted) {
+        if (!isLenient()) {
+            throw error.at(file, "line " + line);
+        }
+        write(file, line, row, error.getReason());
+        if (!addError(uncounted)) {
+            throw new IllegalStateException(getAbortMessage());
+        }
+    }
+
+    /**
+     * Writes a malformed row to the quarantine file
+     *
+     */
+    public synchronized void write(String file, long line, CharSequence row, String reason) {
+        try {
+            out.append(file).append(", ").append(String.valueOf(line)).append(", ")
+               .append(reason.replace(',', ';').replace('\n', ' ')).append(", ")
+               .append(row).append('\n');
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Error while writing quarantine file : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts a malformed row, with the rows its reader has not counted yet so that the fraction is taken
+     * of the rows read so far
+     *
+     * @param uncounted - rows read by the caller and not counted yet, this one included
+     * @return - true if reading can go on, false once too many rows are malformed
+     */
+    public boolean addError(long uncounted) {
+        rows.add(uncounted);
+        long errorsSize = errors.incrementAndGet();
+        if (Metrics.ENABLED && metered) {
+            Metrics.get().addRejected(1);
+        }
+        if (errorsSize > maxErrorRate * Math.max(MIN_ROWS, rows.sum())) {
+            aborted = true;
+        }
+        return !aborted;
+    }
+
+    /**
+     * Returns true once too many rows are malformed. Readers check it between batches of rows
+     *
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Returns the reason reading was given up
+     *
+     */
+    public String getAbortMessage() {
+        return String.format("More than %s%% of the rows are malformed (%d of %d), see %s", 
+                             maxErrorRate * 100, errors.get(), rows.sum(), fileName);
+    }
+
+    /**
+     * Returns the number of malformed rows
+     *
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the name of the quarantine file
+     *
+     */
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,198 @@
+package com.meb.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.meb.metrics.Metrics;
+
+/**
+ * Follows a transaction csv file which is appended to, like tail -f.
+ * The offset after the last consumed line is kept, and every poll reads only the bytes appended since.
+ * A line is consumed once its newline has been written, so a line which is still being written is
+ * picked up by a later poll. The header row is skipped on the first poll. Lines the consumer finds
+ * malformed are handed to a {@link Quarantine}.
+ *
+ * The file is polled rather than watched, as a {@link java.nio.file.WatchService} falls back to polling
+ * on some platforms and does not report appends to a file which is kept open by its writer on others.
+ *
+ * @author sundeep
+ *
+ */
+public class TailFollower {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final Path file;
+    private final Consumer<CsvTokenizer> consumer;
+    private final Quarantine quarantine;
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+    private final ByteCharSequence view = new ByteCharSequence();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+    private long offset;
+    private long lineNumber;
+    private boolean headerSkipped;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param fileName - the input transaction file
+     * @param consumer - receives the tokenized appended lines in file order
+     */
+    public TailFollower(String fileName, Consumer<CsvTokenizer> consumer) {
+        this(fileName, consumer, Quarantine.getDefault());
+    }
+
+    /**
+     * @param fileName - the input transaction file
+     * @param consumer - receives the tokenized appended lines in file order
+     * @param quarantine - handles the lines the consumer throws a {@link MalformedRowException} for
+     */
+    public TailFollower(String fileName, Consumer<CsvTokenizer> consumer, Quarantine quarantine) {
+        this.file = Paths.get(fileName);
+        this.consumer = consumer;
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Reads the lines appended since the last poll. The offset moves past every line before it is handed to the
+     * consumer, so a line the consumer fails on is not read again by the next poll
+     *
+     * @return - number of non empty lines consumed
+     */
+    public synchronized long poll() throws IOException {
+        long started = Metrics.ENABLED ? System.nanoTime() : 0;
+        long startOffset = offset;
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                System.out.println("Transaction file " + file + " shrank below the followed offset " + offset + ", ignoring it");
+                return 0;
+            }
+
+            buffer.clear();
+            while (offset + buffer.position() < size) {
+                if (!buffer.hasRemaining()) {
+                    // a single line longer than the buffer
+                    buffer.flip();
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+                }
+                if (channel.read(buffer, offset + buffer.position()) <= 0) {
+                    break;
+                }
+                count += consumeLines();
+            }
+        }
+        if (Metrics.ENABLED && count > 0) {
+            long nanos = System.nanoTime() - started;
+            Metrics.get().addParsed(count, offset - startOffset, nanos);
+            Metrics.get().addIngestTime(nanos);
+        }
+        return count;
+    }
+
+    /**
+     * Consumes the complete lines at the start of the buffer and moves the rest of the buffer to its start
+     *
+     * @return - number of non empty lines consumed
+     */
+    private long consumeLines() {
+        long count = 0;
+        long uncounted = 0;
+        int limit = buffer.position();
+        int lineStart = 0;
+        boolean ascii = true;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                offset += i + 1 - lineStart;
+                lineNumber++;
+                if (!headerSkipped) {
+                    headerSkipped = true;
+                } else {
+                    CharSequence line = ascii ? view.wrap(buffer, lineStart, i) : decode(lineStart, i);
+                    if (tokenizer.tokenize(line) > 0) {      // skip empty line
+                        uncounted++;
+                        try {
+                            consumer.accept(tokenizer);
+                            count++;
+                        } catch (MalformedRowException e) {
+                            quarantine.reject(file.toString(), lineNumber, line.toString(), e, uncounted);
+                            uncounted = 0;
+                        }
+                    }
+                }
+                lineStart = i + 1;
+                ascii = true;
+            } else if (b < 0) {
+                ascii = false;
+            }
+        }
+        quarantine.count(uncounted);
+        buffer.flip();
+        buffer.position(lineStart);
+        buffer.compact();
+        return count;
+    }
+
+    /**
+     * Decodes a line holding non ASCII characters with the platform charset, as {@link InputIngester} does
+     *
+     */
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    /**
+     * Polls the file in the background until {@link #stop()} is called.
+     * Errors are reported on the console and the next poll tries again
+     *
+     * @param interval - time between the end of a poll and the start of the next one
+     * @param unit - unit of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Already following " + file);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tail-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Error while following input file : " + e.getMessage());
+            }
+        }, 0, interval, unit);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Returns the offset after the last consumed line
+     *
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,145 @@
+package com.meb.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Codec for the fixed dd/MM/yyyy HH:mm:ss timestamp layout used in the transaction file and the user inputs.
+ * Timestamps are parsed straight from the digits into epoch seconds (taken as UTC) without creating
+ * any objects. The epoch day of the last parsed date is cached, which pays off as the files are mostly
+ * ordered by time.
+ *
+ * Anything outside the plain layout, e.g. 31/04 or 24:00:00 which the formatter resolves smartly, is handed
+ * over to {@link #FORMATTER}, so the accepted and rejected inputs are exactly those of
+ * {@link ValidatorUtil#validateDate(String, String)}.
+ *
+ * Instances are not thread safe, the static methods are.
+ *
+ * @author sundeep
+ *
+ */
+public class TimestampCodec {
+
+    public static final String PATTERN = "dd/MM/yyyy HH:mm:ss";
+    public static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern(PATTERN);
+
+    /** Epoch second used for records without a timestamp */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int LENGTH = PATTERN.length();
+    private static final int[] DAYS_IN_MONTH = { 0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private int cachedDateKey = -1;
+    private long cachedEpochDay;
+
+    /**
+     * Parses a timestamp into epoch seconds, reusing the epoch day of the previous call when the date is unchanged
+     *
+     * @param text - characters holding the timestamp
+     * @param from - index of the first character
+     * @param to - index after the last character
+     * @return - seconds since 01/01/1970 00:00:00
+     * @throws DateTimeParseException - if the text is not a valid timestamp
+     */
+    public long parse(CharSequence text, int from, int to) {
+        if (to - from == LENGTH && hasLayout(text, from)) {
+            int day = digits2(text, from);
+            int month = digits2(text, from + 3);
+            int year = digits2(text, from + 6) * 100 + digits2(text, from + 8);
+            int hour = digits2(text, from + 11);
+            int minute = digits2(text, from + 14);
+            int second = digits2(text, from + 17);
+            if (hour < 24 && minute < 60 && second < 60) {
+                int dateKey = (year * 100 + month) * 100 + day;
+                if (dateKey == cachedDateKey) {
+                    return cachedEpochDay * 86400 + hour * 3600 + minute * 60 + second;
+                }
+                if (year > 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)) {
+                    cachedDateKey = dateKey;
+                    cachedEpochDay = epochDay(year, month, day);
+                    return cachedEpochDay * 86400 + hour * 3600 + minute * 60 + second;
+                }
+            }
+        }
+        return parseWithFormatter(text.subSequence(from, to));
+    }
+
+    /**
+     * Parses a timestamp into epoch seconds
+     *
+     * @throws DateTimeParseException - if the text is not a valid timestamp
+     */
+    public static long parseEpochSecond(CharSequence text) {
+        return new TimestampCodec().parse(text, 0, text.length());
+    }
+
+    /**
+     * Checks if the text is a valid timestamp
+     *
+     */
+    public static boolean isValid(CharSequence text) {
+        try {
+            parseEpochSecond(text);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Converts a date time to epoch seconds
+     *
+     */
+    public static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime == null ? NONE : dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts epoch seconds back to a date time
+     *
+     */
+    public static LocalDateTime toLocalDateTime(long epochSecond) {
+        return epochSecond == NONE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    private static long parseWithFormatter(CharSequence text) {
+        return LocalDateTime.parse(text, FORMATTER).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static boolean hasLayout(CharSequence text, int from) {
+        for (int i = 0; i < LENGTH; i++) {
+            char c = text.charAt(from + i);
+            char p = PATTERN.charAt(i);
+            if (Character.isLetter(p) ? c < '0' || c > '9' : c != p) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits2(CharSequence text, int index) {
+        return (text.charAt(index) - '0') * 10 + (text.charAt(index + 1) - '0');
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month];
+    }
+
+    /**
+     * Days since 01/01/1970 of a proleptic gregorian date
+     *
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
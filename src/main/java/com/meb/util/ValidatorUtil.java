@@ -5,6 +5,8 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
+import com.meb.vo.DateRange;
+
 /**
  * Utility class used to perform validation on the provided inputs
  * 
@@ -14,45 +16,67 @@ import java.time.format.DateTimeParseException;
 public class ValidatorUtil {
 
     /**
-     * Validates user provided inputs for null and empty check
+     * Validates user provided inputs for null and empty check, printing the reason they are invalid
+     * 
+     * @return - the parsed date range, null if the inputs are invalid
+     */
+    public static DateRange validateInputs(String accountId, String fromDate, String toDate) {
+        DateRange range = parseInputs(accountId, fromDate, toDate);
+        if (!range.isValid()) {
+            System.out.println(range.getError());
+            return null;
+        }
+        return range;
+    }
+
+    /**
+     * Validates user provided inputs without printing anything. The dates are parsed once, here
      * 
+     * @return - the parsed date range, or the reason the inputs are invalid
      */
-    public static boolean validateInputs(String accountId, String fromDate, String toDate) {
+    public static DateRange parseInputs(String accountId, String fromDate, String toDate) {
         if (accountId == null || accountId.isEmpty()) {
-            System.out.println("Account Id is empty");
-            return false;
+            return DateRange.invalid("Account Id is empty");
         }
+        return parseRange(fromDate, toDate);
+    }
+
+    /**
+     * Validates a user provided date range without printing anything. The dates are parsed once, here
+     * 
+     * @return - the parsed date range, or the reason it is invalid
+     */
+    public static DateRange parseRange(String fromDate, String toDate) {
         if (fromDate == null || fromDate.isEmpty()) { 
-            System.out.println("From date is empty");
-            return false;
+            return DateRange.invalid("From date is empty");
         }
         if (toDate == null || toDate.isEmpty()) {
-            System.out.println("To date is empty");
-            return false;
+            return DateRange.invalid("To date is empty");
         }
         
-        if (!validateDate(fromDate, "dd/MM/yyyy HH:mm:ss") ||
-                !validateDate(toDate, "dd/MM/yyyy HH:mm:ss")) {
-            System.out.println("Either from date or to date is invalid");
-            return false;
+        long from, to;
+        try {
+            from = TimestampCodec.parseEpochSecond(fromDate);
+            to = TimestampCodec.parseEpochSecond(toDate);
+        } catch (DateTimeParseException e) {
+            return DateRange.invalid("Either from date or to date is invalid");
         }
-
-        DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-        LocalDateTime from = LocalDateTime.parse(fromDate, df);
-        LocalDateTime to = LocalDateTime.parse(toDate, df);
-        if (!isValidDateRange(from, to)) {
-            System.out.println("From-date is later than To-date");
-            return false;
+        if (to <= from) {
+            return DateRange.invalid("From-date is later than To-date");
         }
         
-        return true;
+        return new DateRange(from, to);
     }
     
     /**
-     * Validates the provided transaction file
+     * Validates the provided transaction file. A directory or a glob is valid when it holds at least one csv file,
+     * see {@link PartitionedDataset}
      * 
      */
     public static boolean validateInputFile(String fileName) {
+        if (fileName != null && PartitionedDataset.isDataset(fileName)) {
+            return !PartitionedDataset.resolve(fileName).isEmpty();
+        }
         return doesTransactionFileExist(fileName) &&
                isTransactionFileCSV(fileName);
     }
@@ -66,10 +90,13 @@ public class ValidatorUtil {
     }
     
     /**
-     * Check if the provided transaction file is a csv file
+     * Check if the provided transaction file is a csv file, which can be gzip compressed
      * 
      */
     public static boolean isTransactionFileCSV(String fileName) {
+        if (DecompressingInputStream.isCompressed(fileName)) {
+            fileName = fileName.substring(0, fileName.length() - DecompressingInputStream.GZIP_SUFFIX.length());
+        }
         int lastIndex = fileName.lastIndexOf('.');
         if (lastIndex == -1 || !"csv".equals(fileName.substring(lastIndex + 1).toLowerCase())) {
             return false;
@@ -86,6 +113,9 @@ public class ValidatorUtil {
      */
     @SuppressWarnings("unused")
     public static boolean validateDate(String date, String pattern) {
+        if (TimestampCodec.PATTERN.equals(pattern)) {
+            return TimestampCodec.isValid(date);
+        }
         try {
             DateTimeFormatter df = DateTimeFormatter.ofPattern(pattern);
             LocalDateTime dt = LocalDateTime.parse(date, df);
@@ -0,0 +1,39 @@
+package com.meb.vo;
+
+/**
+ * Result of a relative balance calculation.
+ * The balance is held in minor units (cents) so that it is exact
+ * 
+ * @author sundeep
+ *
+ */
+public class BalanceResult {
+
+    private final long relativeBalance;
+    private final int txnsSize;
+
+    public BalanceResult(long relativeBalance, int txnsSize) {
+        this.relativeBalance = relativeBalance;
+        this.txnsSize = txnsSize;
+    }
+
+    /**
+     * Returns the relative balance (incoming - outgoing) in minor units
+     * 
+     */
+    public long getRelativeBalance() {
+        return relativeBalance;
+    }
+
+    /**
+     * Returns the number of transactions included in the relative balance
+     * 
+     */
+    public int getTxnsSize() {
+        return txnsSize;
+    }
+
+    public String toString() {
+        return String.format("Relative balance: [%d], Transactions: [%d]", relativeBalance, txnsSize);
+    }
+}
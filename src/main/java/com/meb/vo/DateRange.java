@@ -0,0 +1,70 @@
+package com.meb.vo;
+
+/**
+ * A user provided date range once validated: the parsed bounds in epoch seconds, or the reason the
+ * inputs are invalid. Callers answer from the parsed bounds rather than parsing the dates again
+ *
+ * @author sundeep
+ *
+ */
+public class DateRange {
+
+    private final long from;
+    private final long to;
+    private final String error;
+
+    public DateRange(long from, long to) {
+        this(from, to, null);
+    }
+
+    private DateRange(long from, long to, String error) {
+        this.from = from;
+        this.to = to;
+        this.error = error;
+    }
+
+    /**
+     * Returns an invalid range
+     *
+     * @param error - the reason the inputs are invalid
+     */
+    public static DateRange invalid(String error) {
+        return new DateRange(0, 0, error);
+    }
+
+    /**
+     * Returns true if the inputs are valid and the bounds parsed
+     *
+     */
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Returns the reason the inputs are invalid, null if they are valid
+     *
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the start of the range in epoch seconds (exclusive)
+     *
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the end of the range in epoch seconds (exclusive)
+     *
+     */
+    public long getTo() {
+        return to;
+    }
+
+    public String toString() {
+        return isValid() ? String.format("From: [%d], To: [%d]", from, to) : error;
+    }
+}
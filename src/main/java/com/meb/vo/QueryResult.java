@@ -0,0 +1,54 @@
+package com.meb.vo;
+
+/**
+ * Answer to a balance query: the account id and the dates as they were asked, and the balance found
+ * 
+ * @author sundeep
+ *
+ */
+public class QueryResult {
+
+    private final String accountId;
+    private final String fromDate;
+    private final String toDate;
+    private final BalanceResult balance;
+
+    public QueryResult(String accountId, String fromDate, String toDate, BalanceResult balance) {
+        this.accountId = accountId;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.balance = balance;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public String getFromDate() {
+        return fromDate;
+    }
+
+    public String getToDate() {
+        return toDate;
+    }
+
+    /**
+     * Returns the relative balance (incoming - outgoing) in minor units
+     * 
+     */
+    public long getRelativeBalance() {
+        return balance.getRelativeBalance();
+    }
+
+    /**
+     * Returns the number of transactions included in the relative balance
+     * 
+     */
+    public int getTxnsSize() {
+        return balance.getTxnsSize();
+    }
+
+    public String toString() {
+        return String.format("Account: [%s], From: [%s], To: [%s], %s", accountId, fromDate, toDate, balance);
+    }
+}
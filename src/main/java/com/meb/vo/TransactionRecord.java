@@ -2,6 +2,9 @@ package com.meb.vo;
 
 import java.time.LocalDateTime;
 
+import com.meb.util.MoneyUtil;
+import com.meb.util.TimestampCodec;
+
 /**
  * This represents a single transaction record.
  * The fields in this class correspond to the fields in the transaction file
@@ -19,8 +22,8 @@ public class TransactionRecord {
     private String transactionId;
     private String fromAccountId;
     private String toAccountId;
-    private LocalDateTime createdAt;
-    private Double amount;
+    private long createdAt = TimestampCodec.NONE;
+    private long amount;        // minor units
     private TransactionType txnType;
     private String origTransactionid;
     
@@ -49,18 +52,50 @@ public class TransactionRecord {
     }
     
     public LocalDateTime getCreatedAt() {
-        return createdAt;
+        return TimestampCodec.toLocalDateTime(createdAt);
     }
     
     public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = TimestampCodec.toEpochSecond(createdAt);
+    }
+    
+    /**
+     * Returns the creation time in epoch seconds, {@link TimestampCodec#NONE} if not set
+     * 
+     */
+    public long getCreatedAtEpochSecond() {
+        return createdAt;
+    }
+    
+    public void setCreatedAtEpochSecond(long createdAt) {
         this.createdAt = createdAt;
     }
     
-    public Double getAmount() {
+    /**
+     * Returns the amount as a decimal. Sums should use {@link #getAmountMinorUnits()}, which is exact
+     * 
+     */
+    public double getAmount() {
+        return amount / 100.0;
+    }
+
+    /**
+     * Sets the amount from a decimal, rounded to the minor unit
+     * 
+     */
+    public void setAmount(double amount) {
+        this.amount = MoneyUtil.toMinorUnits(amount);
+    }
+
+    /**
+     * Returns the amount in minor units (cents)
+     * 
+     */
+    public long getAmountMinorUnits() {
         return amount;
     }
 
-    public void setAmount(Double amount) {
+    public void setAmountMinorUnits(long amount) {
         this.amount = amount;
     }
 
@@ -82,7 +117,7 @@ public class TransactionRecord {
     
     public String toString() {
         String s = String.format("Txn id: [%s], From a/c: [%s], To a/c: [%s], Created: [%s], Amount: [%.2f], Type: [%s], Orig Txn: [%s]", 
-                                 transactionId, fromAccountId, toAccountId, createdAt, amount, txnType, origTransactionid);
+                                 transactionId, fromAccountId, toAccountId, getCreatedAt(), MoneyUtil.toDecimal(amount), txnType, origTransactionid);
         return s;
     }
 }
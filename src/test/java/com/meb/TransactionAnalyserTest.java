@@ -1,14 +1,30 @@
 package com.meb;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.meb.store.TransactionStore;
+import com.meb.util.InputIngester;
+import com.meb.vo.QueryResult;
+
 /**
  * Unit tests for {@link TransactionAnalyser}
  *  
@@ -19,15 +35,20 @@ public class TransactionAnalyserTest {
 
     private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
     private final TransactionAnalyser analyser = new TransactionAnalyser();
+    private Path dir;
     
     @Before
     public void setUp() throws Exception {
         System.setOut(new PrintStream(outContent));
+        dir = Files.createTempDirectory("analyser");
     }
 
     @After
     public void tearDown() throws Exception {
         System.setOut(null);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
     }
 
     @Test
@@ -51,6 +72,115 @@ public class TransactionAnalyserTest {
         assertTrue(outContent.toString().trim().contains("Number of transactions included is: 3"));
     }
 
+    @Test
+    public final void testReversalBeforePayment() {
+        // TX20003 reverses TX20001 which appears later in the file
+        analyser.analyseTransactions("ACC334455", "20/10/2018 12:00:00", "21/10/2018 19:00:00", "src/test/resources/transactions3.csv");
+        assertTrue(outContent.toString().trim().contains("Relative balance for the period is: $4.50"));
+        assertTrue(outContent.toString().trim().contains("Number of transactions included is: 1"));
+    }
+
+    @Test
+    public final void testPartitionGlob() {
+        analyser.analyseTransactions("ACC334455", "20/10/2018 12:00:00", "20/10/2018 19:00:00", "src/test/resources/transactions1*.csv");
+        assertTrue(outContent.toString().trim().contains("Relative balance for the period is: -$25.00"));
+        assertTrue(outContent.toString().trim().contains("Number of transactions included is: 1"));
+    }
+
+    @Test
+    public final void testLoadedStore() {
+        TransactionStore store = InputIngester.loadStore("src/test/resources/transactions2.csv");
+        analyser.analyseTransactions("ACC334455", "20/10/2018 12:00:00", "21/10/2018 19:00:00", store);
+        assertTrue(outContent.toString().trim().contains("Relative balance for the period is: $5.75"));
+        assertTrue(outContent.toString().trim().contains("Number of transactions included is: 3"));
+    }
+
+    @Test
+    public final void testBatchQueries() throws Exception {
+        // batch mode writes the index side file next to the transaction file, so it reads a copy
+        Path results = dir.resolve("results.csv");
+        analyser.analyseBatch(fixture("queries1.csv"), results.toString(), fixture("transactions2.csv"));
+        assertTrue(outContent.toString().trim().contains("From-date is later than To-date"));
+        assertTrue(outContent.toString().trim().contains("Number of queries answered is: 4"));
+        assertEquals(Arrays.asList("accountId, fromDate, toDate, relativeBalance, txnsSize",
+                                   "ACC334455, 20/10/2018 12:00:00, 21/10/2018 19:00:00, 5.75, 3",
+                                   "ACC778899, 20/10/2018 12:00:00, 21/10/2018 19:00:00, 9.25, 2",
+                                   "acc334455, 20/10/2018 12:00:00, 20/10/2018 19:00:00, 15.00, 1",
+                                   "ACC000000, 20/10/2018 12:00:00, 21/10/2018 19:00:00, 0.00, 0"),
+                     Files.readAllLines(results));
+        assertTrue(Files.exists(dir.resolve("transactions2.csv.idx")));
+    }
+
+    @Test
+    public final void testBatchOverflowReported() throws Exception {
+        Path file = dir.resolve("large.csv");
+        Path queries = dir.resolve("queries.csv");
+        Files.write(file, Arrays.asList("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType",
+                                        "TX1, ACC1, ACC2, 20/10/2018 12:00:00, 92233720368547758.07, PAYMENT",
+                                        "TX2, ACC1, ACC2, 20/10/2018 13:00:00, 92233720368547758.07, PAYMENT"));
+        Files.write(queries, Arrays.asList("accountId, fromDate, toDate",
+                                           "ACC1, 20/10/2018 00:00:00, 21/10/2018 00:00:00"));
+        TransactionAnalyser.main(new String[] { file.toString(), "batch", queries.toString(),
+                                                dir.resolve("results.csv").toString() });
+        assertTrue(outContent.toString(), outContent.toString().contains("Amounts are too large to be summed exactly. Aborting..."));
+    }
+
+    @Test
+    public final void testBatchQueriesAsJsonLines() throws Exception {
+        Path results = dir.resolve("results.jsonl");
+        analyser.analyseBatch(fixture("queries1.csv"), results.toString(), fixture("transactions2.csv"));
+        List<String> lines = Files.readAllLines(results);
+        assertEquals(4, lines.size());
+        assertEquals("{\"accountId\":\"ACC334455\",\"fromDate\":\"20/10/2018 12:00:00\",\"toDate\":\"21/10/2018 19:00:00\"," +
+                     "\"relativeBalance\":5.75,\"txnsSize\":3}", lines.get(0));
+    }
+
+    @Test
+    public final void testResultPublishedToSink() {
+        List<QueryResult> published = new ArrayList<>();
+        TransactionAnalyser analyser = new TransactionAnalyser(1, published::add);
+        QueryResult result = analyser.analyseTransactions("ACC334455", "20/10/2018 12:00:00", "21/10/2018 19:00:00",
+                                                          "src/test/resources/transactions2.csv");
+        assertEquals(575, result.getRelativeBalance());
+        assertEquals(3, result.getTxnsSize());
+        assertEquals("ACC334455", result.getAccountId());
+        assertEquals(Arrays.asList(result), published);
+        assertTrue(!outContent.toString().contains("Relative balance"));
+
+        assertNull(analyser.analyseTransactions("ACC334455", "21/10/2018 19:00:00", "20/10/2018 12:00:00",
+                                                "src/test/resources/transactions2.csv"));
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    public final void testSingleQueryUsesSnapshot() throws Exception {
+        String csv = fixture("transactions1.csv");
+        analyser.snapshot(csv);
+        // change an amount without changing the size and leave the snapshot newer than the csv, so the
+        // answer shows which of them was read
+        Path csvPath = Paths.get(csv);
+        byte[] bytes = new String(Files.readAllBytes(csvPath)).replace("25.00, PAYMENT", "35.00, PAYMENT").getBytes();
+        Files.write(csvPath, bytes);
+        Files.setLastModifiedTime(csvPath, FileTime.fromMillis(Files.getLastModifiedTime(Paths.get(csv + TransactionStore.FILE_SUFFIX))
+                                                                    .toMillis() - 60000));
+
+        QueryResult result = analyser.analyseTransactions("ACC334455", "20/10/2018 12:00:00", "20/10/2018 19:00:00", csv);
+        assertEquals(-2500, result.getRelativeBalance());
+        assertEquals(1, result.getTxnsSize());
+    }
+
+    @Test
+    public final void testReport() throws Exception {
+        Path report = dir.resolve("report.csv");
+        analyser.report("20/10/2018 12:00:00", "21/10/2018 19:00:00", report.toString(), fixture("transactions2.csv"));
+        assertTrue(outContent.toString().trim().contains("Number of accounts reported is: 3"));
+        assertEquals(Arrays.asList("accountId, incoming, outgoing, relativeBalance, txnsSize",
+                                   "ACC334455, 15.00, 9.25, 5.75, 3",
+                                   "ACC778899, 9.25, 0.00, 9.25, 2",
+                                   "ACC998877, 0.00, 15.00, -15.00, 1"),
+                     Files.readAllLines(report));
+    }
+
     @Test
     public final void testInvalidAccountId() {
         analyser.analyseTransactions("ACC3344551", "20/10/2018 12:00:00", "20/10/2018 19:00:00", "src/test/resources/transactions1.csv");
@@ -106,4 +236,12 @@ public class TransactionAnalyserTest {
         assertTrue(outContent.toString().trim().contains("Either transaction file does not exist or is not in CSV format. Aborting..."));
     }
 
+    /**
+     * Copies a file of the test resources to the temporary directory and returns the path of the copy,
+     * so that side files written next to it stay out of the source tree
+     *
+     */
+    private String fixture(String name) throws IOException {
+        return Files.copy(Paths.get("src/test/resources", name), dir.resolve(name)).toString();
+    }
 }
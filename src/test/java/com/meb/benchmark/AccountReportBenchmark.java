@@ -0,0 +1,88 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.AccountReport;
+import com.meb.store.TransactionStore;
+import com.meb.util.InputIngester;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Compares the balances of every account from an {@link AccountReport} of the csv, over several threads,
+ * with a scan of the loaded store per account
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=AccountReportBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountReportBenchmark {
+
+    @Param({ "1000000" })
+    private int rows;
+
+    @Param({ "1000" })
+    private int accounts;
+
+    @Param({ "1", "4" })
+    private int threads;
+
+    private Path file;
+    private TransactionStore store;
+    private long from;
+    private long to;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("report", ".csv");
+        List<TransactionRecord> txns = new TransactionGenerator(accounts, 0.05, 42).generate(rows);
+        TransactionGenerator.writeCsv(file, txns);
+        store = InputIngester.loadStore(file.toString());
+        from = txns.get(0).getCreatedAtEpochSecond();
+        to = txns.get(rows - 1).getCreatedAtEpochSecond();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int report() throws IOException {
+        return new AccountReport(threads).write(Collections.singletonList(file), from, to, new StringWriter(accounts * 64));
+    }
+
+    @Benchmark
+    public long scanPerAccount() {
+        long total = 0;
+        for (int i = 0; i < accounts; i++) {
+            total += store.calculateBalance(TransactionGenerator.accountId(i), from, to).getRelativeBalance();
+        }
+        return total;
+    }
+}
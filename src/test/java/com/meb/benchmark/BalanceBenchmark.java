@@ -0,0 +1,68 @@
+package com.meb.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.BalanceAccumulator;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Compares the original four scan stream pipeline with the single pass {@link BalanceAccumulator}
+ * 
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BalanceBenchmark
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceBenchmark {
+
+    @Param({ "1000000" })
+    private int rows;
+
+    @Param({ "1000" })
+    private int accounts;
+
+    private List<TransactionRecord> txns;
+    private String accountId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    @Setup
+    public void setUp() {
+        txns = new TransactionGenerator(accounts, 0.05, 42).generate(rows);
+        accountId = TransactionGenerator.accountId(7);
+        from = TransactionGenerator.START;
+        to = TransactionGenerator.START.plusMinutes(rows);
+    }
+
+    @Benchmark
+    public double[] legacyStreams() {
+        return LegacyBalanceCalculator.calculate(accountId, from, to, txns);
+    }
+
+    @Benchmark
+    public double singlePass() {
+        BalanceAccumulator balance = new BalanceAccumulator(accountId, from, to);
+        txns.forEach(balance);
+        return balance.getRelativeBalance() + balance.getTxnsSize();
+    }
+}
@@ -0,0 +1,101 @@
+package com.meb.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.BalanceCalculator;
+import com.meb.store.AccountIndex;
+import com.meb.store.BalanceCube;
+import com.meb.store.TransactionStore;
+
+/**
+ * Compares "net flow over the last N hours" queries answered from the time bucketed {@link BalanceCube},
+ * the {@link AccountIndex} and a scan of the {@link TransactionStore}
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BalanceCubeBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceCubeBenchmark {
+
+    private static final int QUERIES = 100;
+
+    @Param({ "1000000" })
+    private int rows;
+
+    @Param({ "1000" })
+    private int accounts;
+
+    @Param({ "6", "72" })
+    private int hours;
+
+    private TransactionStore store;
+    private AccountIndex index;
+    private BalanceCube cube;
+    private String[] accountIds;
+    private long[] from;
+    private long[] to;
+
+    @Setup
+    public void setUp() {
+        store = new TransactionStore();
+        new TransactionGenerator(accounts, 0.05, 42).generate(rows).forEach(store::add);
+        store.trimToSize();
+        index = AccountIndex.build(store);
+        cube = BalanceCube.build(index);
+
+        Random random = new Random(7);
+        long first = store.getCreatedAt(0);
+        long last = store.getCreatedAt(rows - 1);
+        accountIds = new String[QUERIES];
+        from = new long[QUERIES];
+        to = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            accountIds[i] = TransactionGenerator.accountId(random.nextInt(accounts));
+            to[i] = last - (long) (random.nextDouble() * (last - first) / 2);
+            from[i] = to[i] - hours * 60 * 60L;
+        }
+    }
+
+    @Benchmark
+    public long cube() {
+        return answer(cube);
+    }
+
+    @Benchmark
+    public long index() {
+        return answer(index);
+    }
+
+    @Benchmark
+    public long storeScan() {
+        return answer(store);
+    }
+
+    private long answer(BalanceCalculator calculator) {
+        long total = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            total += calculator.calculateBalance(accountIds[i], from[i], to[i]).getRelativeBalance();
+        }
+        return total;
+    }
+}
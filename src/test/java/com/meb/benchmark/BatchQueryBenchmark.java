@@ -0,0 +1,106 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.BalanceAccumulator;
+import com.meb.engine.BatchQueryProcessor;
+import com.meb.store.AccountIndex;
+import com.meb.util.ChunkedFileReader;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+
+/**
+ * Compares answering a query file by reading the transaction file once per query, as a loop over
+ * analyseTransactions does, with the batch mode which loads the file once
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BatchQueryBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BatchQueryBenchmark {
+
+    @Param({ "100000" })
+    private int rows;
+
+    @Param({ "1000" })
+    private int queries;
+
+    private Path file;
+    private Path queryFile;
+    private List<String[]> queryList;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("batch", ".csv");
+        queryFile = Files.createTempFile("queries", ".csv");
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(1000, 0.05, 42).generate(rows));
+
+        Random random = new Random(1);
+        List<String> lines = new ArrayList<>();
+        queryList = new ArrayList<>();
+        lines.add("accountId, fromDate, toDate");
+        for (int i = 0; i < queries; i++) {
+            int start = random.nextInt(rows);
+            String[] query = { TransactionGenerator.accountId(random.nextInt(1000)),
+                               TimestampCodec.FORMATTER.format(TransactionGenerator.START.plusMinutes(start)),
+                               TimestampCodec.FORMATTER.format(TransactionGenerator.START.plusMinutes(start + random.nextInt(rows))) };
+            queryList.add(query);
+            lines.add(String.join(", ", query));
+        }
+        Files.write(queryFile, lines);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(queryFile);
+    }
+
+    @Benchmark
+    public double fileReadPerQuery() {
+        double total = 0;
+        ChunkedFileReader reader = new ChunkedFileReader(1);
+        for (String[] query : queryList) {
+            long from = TimestampCodec.parseEpochSecond(query[1]);
+            long to = TimestampCodec.parseEpochSecond(query[2]);
+            BalanceAccumulator balance = reader.read(file.toString(), () -> new BalanceAccumulator(query[0], from, to),
+                                                     BalanceAccumulator::merge);
+            total += balance.getRelativeBalance();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int batch() throws IOException {
+        // build the index every time, as a first run against a new file would
+        AccountIndex index = AccountIndex.build(InputIngester.loadStore(file.toString()));
+        return new BatchQueryProcessor(index).process(queryFile.toString(), new StringWriter(queries * 64));
+    }
+}
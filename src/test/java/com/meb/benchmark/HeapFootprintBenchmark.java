@@ -0,0 +1,88 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.util.InputIngester;
+
+/**
+ * Compares the resident heap of a file loaded as a list of {@link com.meb.vo.TransactionRecord}
+ * with the same file loaded into a {@link com.meb.store.TransactionStore}.
+ * The bytesPerRow counter is the heap retained after a full gc divided by the number of rows.
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class HeapFootprintBenchmark {
+
+    @Param({ "1000000" })
+    private int rows;
+
+    private Path file;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerRow;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("footprint", ".csv");
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(10000, 0.05, 42).generate(rows));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object recordList(Footprint footprint) {
+        long before = usedHeap();
+        Object txns = InputIngester.readTransactions(file.toString());
+        footprint.bytesPerRow = (usedHeap() - before) / rows;
+        return txns;
+    }
+
+    @Benchmark
+    public Object columnarStore(Footprint footprint) {
+        long before = usedHeap();
+        Object store = InputIngester.loadStore(file.toString());
+        footprint.bytesPerRow = (usedHeap() - before) / rows;
+        return store;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
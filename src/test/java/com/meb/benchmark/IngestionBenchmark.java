@@ -0,0 +1,67 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.meb.util.InputIngester;
+
+/**
+ * Compares the split based line parsing with the {@link com.meb.util.CsvTokenizer} based one.
+ * The score is records per second. Run with the gc profiler to get the bytes allocated per record:
+ * 
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=IngestionBenchmark -Dbenchmark.args="-prof gc"
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(IngestionBenchmark.ROWS)
+public class IngestionBenchmark {
+
+    static final int ROWS = 200000;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("ingestion", ".csv");
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(1000, 0.05, 42).generate(ROWS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void legacySplit(Blackhole bh) throws IOException {
+        LegacyInputIngester.streamTransactions(file.toString(), bh::consume);
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole bh) {
+        InputIngester.streamTransactions(file.toString(), bh::consume);
+    }
+}
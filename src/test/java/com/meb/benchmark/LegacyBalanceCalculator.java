@@ -0,0 +1,56 @@
+package com.meb.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Copy of the original stream based balance calculation of {@link com.meb.TransactionAnalyser}.
+ * It is kept as the baseline for benchmarks. It leaves reversed payments out of the outgoing side only,
+ * so its results differ from the newer engines for accounts which receive reversed payments.
+ * 
+ * @author sundeep
+ *
+ */
+public class LegacyBalanceCalculator {
+
+    /**
+     * Calculates the relative balance and the number of transactions included
+     * 
+     * @return - array holding the relative balance and the transaction count
+     */
+    public static double[] calculate(String accountId, LocalDateTime from, LocalDateTime to, List<TransactionRecord> txns) {
+        // get the list of reversal transactions for the given account and store their original transactions
+        Set<String> origTxns = txns.stream()
+                                   .filter(rec -> rec.getFromAccountId().toUpperCase().equals(accountId.toUpperCase()))
+                                   .filter(rec -> rec.getOrigTransactionid() != null)
+                                   .map(TransactionRecord::getOrigTransactionid)
+                                   .collect(Collectors.toSet());
+
+        // filter out the reversal transactions and transactions outside the date range
+        List<TransactionRecord> outTxns = txns.stream()
+                                              .filter(rec -> rec.getFromAccountId().toUpperCase().equals(accountId.toUpperCase()))
+                                              .filter(rec -> !origTxns.contains(rec.getTransactionId().toUpperCase()))
+                                              .filter(rec -> rec.getCreatedAt().isAfter(from) && rec.getCreatedAt().isBefore(to) &&
+                                                             TransactionType.PAYMENT.equals(rec.getTxnType()))
+                                              .collect(Collectors.toList());
+        double outBalance = outTxns.stream()
+                                   .mapToDouble(rec -> rec.getAmount())
+                                   .sum();
+
+        List<TransactionRecord> inTxns = txns.stream()
+                                             .filter(rec -> rec.getToAccountId().toUpperCase().equals(accountId.toUpperCase()))
+                                             .filter(rec -> rec.getCreatedAt().isAfter(from) && rec.getCreatedAt().isBefore(to) &&
+                                                            TransactionType.PAYMENT.equals(rec.getTxnType()))
+                                             .collect(Collectors.toList());
+        double inBalance = inTxns.stream()
+                                 .mapToDouble(rec -> rec.getAmount())
+                                 .sum();
+
+        return new double[] { inBalance - outBalance, inTxns.size() + outTxns.size() };
+    }
+}
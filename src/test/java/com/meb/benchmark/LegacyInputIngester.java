@@ -0,0 +1,58 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Copy of the original split based line parsing of {@link com.meb.util.InputIngester}.
+ * It is kept as the baseline for ingestion benchmarks.
+ * 
+ * @author sundeep
+ *
+ */
+public class LegacyInputIngester {
+
+    private static final Function<String, TransactionRecord> MAP_TO_TRANSACTION = (line) -> {
+        TransactionRecord txnRecord = new TransactionRecord();
+        if (!line.trim().isEmpty()) {
+            String[] txn = line.trim().split(",");
+
+            txnRecord.setTransactionId(txn[0].trim());
+            txnRecord.setFromAccountId(txn[1].trim());
+            txnRecord.setToAccountId(txn[2].trim());
+            if (!txn[3].isEmpty()) {
+                DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+                txnRecord.setCreatedAt(LocalDateTime.parse(txn[3].trim(), df));
+            }
+            txnRecord.setAmount(Double.valueOf(txn[4].trim()));
+            txnRecord.setTxnType(TransactionType.valueOf(txn[5].trim()));
+            if (TransactionType.REVERSAL.equals(TransactionType.valueOf(txn[5].trim()))) {
+                txnRecord.setOrigTransactionid(txn[6].trim());
+            }
+        }
+        return txnRecord;
+    };
+
+    /**
+     * Reads the csv file and hands every record to the consumer
+     * 
+     */
+    public static void streamTransactions(String fileName, Consumer<TransactionRecord> consumer) throws IOException {
+        try (Stream<String> lines = Files.lines(Paths.get(fileName), Charset.defaultCharset())) {
+            lines.skip(1)
+                 .filter(line -> !line.trim().isEmpty())
+                 .map(MAP_TO_TRANSACTION)
+                 .forEach(consumer);
+        }
+    }
+}
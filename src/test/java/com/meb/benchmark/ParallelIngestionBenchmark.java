@@ -0,0 +1,102 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.BalanceAccumulator;
+import com.meb.util.ChunkedFileReader;
+import com.meb.util.InputIngester;
+
+/**
+ * Measures how the memory mapped {@link ChunkedFileReader} scales with the number of threads,
+ * against the single threaded {@link InputIngester#streamTransactions}. The score is records per second.
+ * The compressed variants read a gzip copy of the same file.
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ParallelIngestionBenchmark.ROWS)
+public class ParallelIngestionBenchmark {
+
+    static final int ROWS = 1000000;
+
+    @Param({ "1", "2", "4", "8", "16", "32" })
+    private int threads;
+
+    private Path file;
+    private Path compressed;
+    private String accountId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("parallel", ".csv");
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(1000, 0.05, 42).generate(ROWS));
+        compressed = Files.createTempFile("parallel", ".csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), 1 << 16)) {
+            Files.copy(file, out);
+        }
+        accountId = TransactionGenerator.accountId(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(compressed);
+    }
+
+    @Benchmark
+    public double streaming() {
+        BalanceAccumulator balance = new BalanceAccumulator(accountId, 0, Long.MAX_VALUE);
+        InputIngester.streamTransactions(file.toString(), balance);
+        return balance.getRelativeBalance();
+    }
+
+    @Benchmark
+    public double chunked() {
+        return chunked(file);
+    }
+
+    @Benchmark
+    public double streamingCompressed() {
+        BalanceAccumulator balance = new BalanceAccumulator(accountId, 0, Long.MAX_VALUE);
+        InputIngester.streamTransactions(compressed.toString(), balance);
+        return balance.getRelativeBalance();
+    }
+
+    @Benchmark
+    public double chunkedCompressed() {
+        return chunked(compressed);
+    }
+
+    private double chunked(Path input) {
+        BalanceAccumulator balance = new ChunkedFileReader(threads).read(input.toString(),
+                                                                         () -> new BalanceAccumulator(accountId, 0, Long.MAX_VALUE),
+                                                                         BalanceAccumulator::merge);
+        return balance.getRelativeBalance();
+    }
+}
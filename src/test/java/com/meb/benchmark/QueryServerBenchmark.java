@@ -0,0 +1,109 @@
+package com.meb.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.server.QueryServer;
+import com.meb.store.AccountIndex;
+import com.meb.store.TransactionStore;
+import com.meb.util.TimestampCodec;
+
+/**
+ * Load generator for the {@link QueryServer}: several client threads send balance queries over HTTP to a
+ * server on the loopback interface. The sample time mode reports the latency percentiles of the warm queries,
+ * p0.99 is the one to watch
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=QueryServerBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class QueryServerBenchmark {
+
+    @Param({ "100000" })
+    private int rows;
+
+    @Param({ "1000" })
+    private int accounts;
+
+    private QueryServer server;
+    private long start;
+
+    @Setup
+    public void setUp() throws IOException {
+        System.setProperty(QueryServer.NODELAY_PROPERTY, "true");
+        TransactionStore store = new TransactionStore();
+        new TransactionGenerator(accounts, 0.05, 42).generate(rows).forEach(store::add);
+        store.trimToSize();
+        server = new QueryServer(AccountIndex.build(store), 0, 4);
+        server.start();
+        start = TimestampCodec.toEpochSecond(TransactionGenerator.START);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Random query of one client thread
+     *
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private final Random random = new Random();
+    }
+
+    @Benchmark
+    public String query(Client client) throws IOException {
+        long from = start + client.random.nextInt(rows * 60);
+        URL url = new URL("http://localhost:" + server.getPort() + QueryServer.BALANCE_PATH +
+                          "?accountId=" + TransactionGenerator.accountId(client.random.nextInt(accounts)) +
+                          "&fromDate=" + URLEncoder.encode(format(from), "UTF-8") +
+                          "&toDate=" + URLEncoder.encode(format(from + 24 * 60 * 60), "UTF-8"));
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        if (conn.getResponseCode() != 200) {
+            throw new IOException("Query failed with status " + conn.getResponseCode());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        try (InputStream in = conn.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static String format(long epochSecond) {
+        return TimestampCodec.FORMATTER.format(TimestampCodec.toLocalDateTime(epochSecond));
+    }
+}
@@ -0,0 +1,93 @@
+package com.meb.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.sink.AsyncResultSink;
+import com.meb.sink.ConsoleResultSink;
+import com.meb.sink.ResultSink;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.QueryResult;
+
+/**
+ * Compares writing a large result set line by line to a synchronized {@link PrintStream}, as the console
+ * output does, with a csv file sink written by the publishing thread and by an {@link AsyncResultSink}
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ResultSinkBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultSinkBenchmark {
+
+    @Param({ "1000000" })
+    private int results;
+
+    private Path file;
+    private QueryResult[] resultList;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("results", ".csv");
+        resultList = new QueryResult[results];
+        for (int i = 0; i < results; i++) {
+            resultList[i] = new QueryResult(TransactionGenerator.accountId(i % 1000), "20/10/2018 12:00:00",
+                                            "21/10/2018 19:00:00", new BalanceResult(i * 7L - 500000, i % 50));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void printStream() throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(file.toFile()), true)) {
+            publishAll(new ConsoleResultSink(out));
+        }
+    }
+
+    @Benchmark
+    public void csv() throws IOException {
+        try (ResultSink sink = ResultSink.open(file)) {
+            publishAll(sink);
+        }
+    }
+
+    @Benchmark
+    public void asyncCsv() throws IOException {
+        try (ResultSink sink = new AsyncResultSink(ResultSink.open(file))) {
+            publishAll(sink);
+        }
+    }
+
+    private void publishAll(ResultSink sink) throws IOException {
+        for (QueryResult result : resultList) {
+            sink.publish(result);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.engine.BalanceAccumulator;
+import com.meb.util.ChunkedFileReader;
+import com.meb.util.InputIngester;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Measures reading and balancing generated transaction files of 1k and 1M rows by default, and of 50M rows
+ * on request. Besides the file reads per second, the rows per second are reported as the rows counter.
+ * The profile runs with the gc profiler, so gc.alloc.rate.norm gives the bytes allocated per file read.
+ * 
+ * The files are generated once into target/benchmark-data. The 50M row file is about 3.5GB and takes a
+ * few minutes to write, and {@link InputIngester#readTransactions(String)} holds every record on the heap,
+ * so at 50M rows it needs a heap of about 16GB. It is left out of the defaults and run explicitly:
+ * 
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ScaleBenchmark -Dbenchmark.args="-p rows=50000000 -jvmArgsAppend -Xmx16g"
+ * 
+ * The other knobs of {@link TransactionGenerator} can be set with -p as well, e.g. -p timeSkew=1440
+ * 
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ScaleBenchmark -Dbenchmark.args="-p rows=1000000"
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScaleBenchmark {
+
+    @Param({ "1000", "1000000" })
+    private long rows;
+
+    @Param({ "1000" })
+    private int accounts;
+
+    @Param({ "0.05" })
+    private double reversalRatio;
+
+    @Param({ "0" })
+    private int timeSkew;
+
+    private String fileName;
+    private String accountId;
+
+    /**
+     * Rows handled in an iteration, reported next to the file reads
+     *
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path file = new TransactionGenerator(accounts, reversalRatio, timeSkew, 42).cachedCsv(rows);
+        fileName = file.toString();
+        accountId = TransactionGenerator.accountId(7);
+    }
+
+    @Benchmark
+    public List<TransactionRecord> readTransactions(RowCounter counter) {
+        List<TransactionRecord> txns = InputIngester.readTransactions(fileName);
+        counter.rows += txns.size();
+        return txns;
+    }
+
+    @Benchmark
+    public long balance(RowCounter counter) {
+        // the path of a single console query
+        BalanceAccumulator balance = new ChunkedFileReader(Runtime.getRuntime().availableProcessors())
+                .read(fileName, () -> new BalanceAccumulator(accountId, Long.MIN_VALUE + 1, Long.MAX_VALUE),
+                      BalanceAccumulator::merge);
+        counter.rows += balance.getRecordsSize();
+        return balance.getRelativeBalance() + balance.getTxnsSize();
+    }
+}
@@ -0,0 +1,71 @@
+package com.meb.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.store.IdDictionary;
+import com.meb.store.TransactionStore;
+import com.meb.util.InputIngester;
+
+/**
+ * Compares loading a {@link TransactionStore} by parsing the csv with loading it from its binary snapshot
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SnapshotBenchmark
+ *
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class SnapshotBenchmark {
+
+    @Param({ "1000000" })
+    private int rows;
+
+    private Path file;
+    private Path snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("snapshot", ".csv");
+        snapshot = Paths.get(file + TransactionStore.FILE_SUFFIX);
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(10000, 0.05, 42).generate(rows));
+        InputIngester.writeSnapshot(file.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    public TransactionStore parseCsv() {
+        return InputIngester.loadStore(file.toString(), new IdDictionary(), new IdDictionary());
+    }
+
+    @Benchmark
+    public TransactionStore readSnapshot() throws IOException {
+        return TransactionStore.read(snapshot, file);
+    }
+}
@@ -0,0 +1,190 @@
+package com.meb.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Generates synthetic transaction records for benchmarks and parity tests.
+ * The output is deterministic for a given seed.
+ * 
+ * The knobs are the number of rows, the account cardinality, the fraction of reversals and the time skew,
+ * the most a creation time can be moved away from the row order, which makes the file out of time order.
+ * 
+ * @author sundeep
+ *
+ */
+public class TransactionGenerator {
+
+    public static final LocalDateTime START = LocalDateTime.of(2018, 10, 1, 0, 0, 0);
+
+    // payments a streamed reversal can refer to, the most recent ones
+    private static final int REVERSAL_WINDOW = 1 << 16;
+
+    private final int accounts;
+    private final double reversalRatio;
+    private final int timeSkew;
+    private final long seed;
+    private final Random random;
+
+    /**
+     * @param accounts - number of distinct account ids
+     * @param reversalRatio - fraction of the rows which reverse an earlier payment
+     * @param seed - random seed
+     */
+    public TransactionGenerator(int accounts, double reversalRatio, long seed) {
+        this(accounts, reversalRatio, 0, seed);
+    }
+
+    /**
+     * @param accounts - number of distinct account ids
+     * @param reversalRatio - fraction of the rows which reverse an earlier payment
+     * @param timeSkew - most minutes the creation time of a row is moved before or after its place in the file
+     * @param seed - random seed
+     */
+    public TransactionGenerator(int accounts, double reversalRatio, int timeSkew, long seed) {
+        this.accounts = accounts;
+        this.reversalRatio = reversalRatio;
+        this.timeSkew = timeSkew;
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Returns the account id for the given index
+     * 
+     */
+    public static String accountId(int index) {
+        return String.format("ACC%06d", index);
+    }
+
+    /**
+     * Generates the given number of records, roughly one per minute starting at {@link #START}
+     * 
+     */
+    public List<TransactionRecord> generate(int rows) {
+        List<TransactionRecord> txns = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            TransactionRecord rec = new TransactionRecord();
+            rec.setTransactionId("TX" + (10000 + i));
+            rec.setCreatedAt(START.plusMinutes(i + skew()));
+            if (i > 0 && random.nextDouble() < reversalRatio) {
+                TransactionRecord orig = txns.get(random.nextInt(i));
+                rec.setFromAccountId(orig.getFromAccountId());
+                rec.setToAccountId(orig.getToAccountId());
+                rec.setAmount(orig.getAmount());
+                rec.setTxnType(TransactionType.REVERSAL);
+                rec.setOrigTransactionid(orig.getTransactionId());
+            } else {
+                rec.setFromAccountId(accountId(random.nextInt(accounts)));
+                rec.setToAccountId(accountId(random.nextInt(accounts)));
+                rec.setAmount(random.nextInt(100000) / 100.0);
+                rec.setTxnType(TransactionType.PAYMENT);
+            }
+            txns.add(rec);
+        }
+        return txns;
+    }
+
+    /**
+     * Writes the given number of generated rows straight to a csv file, without holding them in memory, so
+     * that files of tens of millions of rows can be made. Reversals refer to one of the last
+     * {@value #REVERSAL_WINDOW} payments
+     * 
+     */
+    public void writeCsv(Path file, long rows) throws IOException {
+        String[] fromAccounts = new String[REVERSAL_WINDOW];
+        String[] toAccounts = new String[REVERSAL_WINDOW];
+        long[] txnIds = new long[REVERSAL_WINDOW];
+        long[] amounts = new long[REVERSAL_WINDOW];
+        long payments = 0;
+
+        DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, Charset.defaultCharset(), 
+                                                             StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer.write("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction");
+            writer.newLine();
+            for (long i = 0; i < rows; i++) {
+                line.setLength(0);
+                String createdAt = df.format(START.plusMinutes(i + skew()));
+                if (payments > 0 && random.nextDouble() < reversalRatio) {
+                    int orig = (int) ((payments - 1 - random.nextInt((int) Math.min(payments, REVERSAL_WINDOW))) % REVERSAL_WINDOW);
+                    appendRow(line, 10000 + i, fromAccounts[orig], toAccounts[orig], createdAt, amounts[orig], TransactionType.REVERSAL);
+                    line.append(", TX").append(txnIds[orig]);
+                } else {
+                    int slot = (int) (payments++ % REVERSAL_WINDOW);
+                    fromAccounts[slot] = accountId(random.nextInt(accounts));
+                    toAccounts[slot] = accountId(random.nextInt(accounts));
+                    txnIds[slot] = 10000 + i;
+                    amounts[slot] = random.nextInt(100000);
+                    appendRow(line, txnIds[slot], fromAccounts[slot], toAccounts[slot], createdAt, amounts[slot], TransactionType.PAYMENT);
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns a csv file of the given number of generated rows, kept under target/benchmark-data and
+     * reused by later runs with the same knobs, as large files take minutes to write
+     * 
+     */
+    public Path cachedCsv(long rows) throws IOException {
+        Path dir = Paths.get("target", "benchmark-data");
+        Files.createDirectories(dir);
+        Path file = dir.resolve(String.format("transactions-%d-%d-%s-%d-%d.csv", rows, accounts, reversalRatio, timeSkew, seed));
+        if (!Files.exists(file)) {
+            Path tmp = Files.createTempFile(dir, "transactions", ".tmp");
+            new TransactionGenerator(accounts, reversalRatio, timeSkew, seed).writeCsv(tmp, rows);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return file;
+    }
+
+    private long skew() {
+        return timeSkew == 0 ? 0 : random.nextInt(2 * timeSkew + 1) - timeSkew;
+    }
+
+    private static void appendRow(StringBuilder line, long txnId, String fromAccountId, String toAccountId, String createdAt,
+                                  long amount, TransactionType txnType) {
+        line.append("TX").append(txnId).append(", ").append(fromAccountId).append(", ").append(toAccountId)
+            .append(", ").append(createdAt).append(", ").append(amount / 100).append('.')
+            .append((char) ('0' + amount % 100 / 10)).append((char) ('0' + amount % 10))
+            .append(", ").append(txnType);
+    }
+
+    /**
+     * Writes the records to a csv file in the layout read by {@link com.meb.util.InputIngester}
+     * 
+     */
+    public static void writeCsv(Path file, List<TransactionRecord> txns) throws IOException {
+        DateTimeFormatter df = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+            writer.write("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction");
+            writer.newLine();
+            for (TransactionRecord rec : txns) {
+                writer.write(String.format("%s, %s, %s, %s, %.2f, %s", rec.getTransactionId(), rec.getFromAccountId(),
+                                           rec.getToAccountId(), df.format(rec.getCreatedAt()), rec.getAmount(), rec.getTxnType()));
+                if (rec.getOrigTransactionid() != null) {
+                    writer.write(", " + rec.getOrigTransactionid());
+                }
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.meb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.meb.util.ValidatorUtil;
+import com.meb.vo.DateRange;
+
+/**
+ * Measures the validation of query inputs, which every console, batch and HTTP query goes through.
+ * Invalid inputs are checked with {@link ValidatorUtil#parseInputs}, which does not print
+ * 
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ValidationBenchmark
+ * 
+ * @author sundeep
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private String accountId = "ACC334455";
+    private String fromDate = "20/10/2018 12:00:00";
+    private String toDate = "20/10/2018 19:00:00";
+    private String badDate = "2018-10-20 19:00:00";
+
+    @Benchmark
+    public DateRange validateInputs() {
+        return ValidatorUtil.validateInputs(accountId, fromDate, toDate);
+    }
+
+    @Benchmark
+    public DateRange invalidDate() {
+        return ValidatorUtil.parseInputs(accountId, fromDate, badDate);
+    }
+
+    @Benchmark
+    public DateRange reversedRange() {
+        return ValidatorUtil.parseInputs(accountId, toDate, fromDate);
+    }
+}
@@ -0,0 +1,105 @@
+package com.meb.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.store.TransactionStore;
+import com.meb.util.InputIngester;
+import com.meb.util.MoneyUtil;
+import com.meb.util.Quarantine;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Unit tests for {@link AccountReport}
+ *
+ * @author sundeep
+ *
+ */
+public class AccountReportTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("report", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testReportMatchesSingleQueries() throws Exception {
+        List<TransactionRecord> txns = new TransactionGenerator(25, 0.1, 30, 9).generate(5000);
+        long from = txns.get(1000).getCreatedAtEpochSecond();
+        long to = txns.get(4000).getCreatedAtEpochSecond();
+        // shuffle so that reversals come before their payments, in other chunks
+        Collections.shuffle(txns, new Random(3));
+        TransactionGenerator.writeCsv(file, txns);
+        TransactionStore store = InputIngester.loadStore(file.toString());
+        Map<String, long[]> expected = incomingAndOutgoing(txns, from, to);
+
+        for (int threads : new int[] { 1, 3 }) {
+            AccountReport report = new AccountReport(threads, 16 * 1024, Quarantine.STRICT);
+            StringWriter out = new StringWriter();
+            assertEquals(25, report.write(Collections.singletonList(file), from, to, out));
+            assertEquals(5000, report.getRecordsSize());
+            assertEquals(store.getOrphanReversals().length, report.getOrphanReversals());
+            String[] lines = out.toString().split("\n");
+            assertEquals(AccountReport.HEADER, lines[0]);
+            assertEquals(26, lines.length);
+            for (int i = 1; i < lines.length; i++) {
+                String[] fields = lines[i].split(", ");
+                long[] inOut = expected.getOrDefault(fields[0], new long[2]);
+                assertEquals(fields[0], MoneyUtil.toDecimal(inOut[0]).toPlainString(), fields[1]);
+                assertEquals(fields[0], MoneyUtil.toDecimal(inOut[1]).toPlainString(), fields[2]);
+                BalanceResult balance = store.calculateBalance(fields[0], from, to);
+                assertEquals(fields[0], MoneyUtil.toDecimal(balance.getRelativeBalance()).toPlainString(), fields[3]);
+                assertEquals(fields[0], String.valueOf(balance.getTxnsSize()), fields[4]);
+            }
+        }
+    }
+
+    /**
+     * Incoming and outgoing minor units of the accounts, summed over the payments in the range which are
+     * not reversed by their paying account
+     *
+     */
+    private static Map<String, long[]> incomingAndOutgoing(List<TransactionRecord> txns, long from, long to) {
+        Set<String> reversed = new HashSet<>();
+        for (TransactionRecord txn : txns) {
+            if (txn.getOrigTransactionid() != null) {
+                reversed.add(txn.getFromAccountId() + ',' + txn.getOrigTransactionid());
+            }
+        }
+        Map<String, long[]> totals = new HashMap<>();
+        for (TransactionRecord txn : txns) {
+            long createdAt = txn.getCreatedAtEpochSecond();
+            if (txn.getTxnType() != TransactionType.PAYMENT || createdAt <= from || createdAt >= to ||
+                    reversed.contains(txn.getFromAccountId() + ',' + txn.getTransactionId())) {
+                continue;
+            }
+            totals.computeIfAbsent(txn.getToAccountId(), id -> new long[2])[0] += txn.getAmountMinorUnits();
+            totals.computeIfAbsent(txn.getFromAccountId(), id -> new long[2])[1] += txn.getAmountMinorUnits();
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,122 @@
+package com.meb.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.util.InputIngester;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Unit tests for {@link BalanceAccumulator}
+ *  
+ * @author sundeep
+ *
+ */
+public class BalanceAccumulatorTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2018, 10, 20, 12, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2018, 10, 21, 19, 0, 0);
+
+    @Test
+    public final void testReversalBeforeAndAfterPayment() {
+        // TX10004 reverses TX10002 which comes later, TX10007 reverses TX10001 which comes earlier
+        List<TransactionRecord> txns = InputIngester.readTransactions("src/test/resources/transactions2.csv");
+        BalanceAccumulator balance = new BalanceAccumulator("ACC334455", FROM, TO);
+        txns.forEach(balance);
+        assertEquals(575, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testCaseInsensitiveAccountId() {
+        List<TransactionRecord> txns = InputIngester.readTransactions("src/test/resources/transactions2.csv");
+        BalanceAccumulator balance = new BalanceAccumulator("acc334455", FROM, TO);
+        txns.forEach(balance);
+        assertEquals(575, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testReversalOnReceivingSide() {
+        // TX10001 and TX10003 paid to ACC778899 are reversed by their payers
+        List<TransactionRecord> txns = InputIngester.readTransactions("src/test/resources/transactions2.csv");
+        BalanceAccumulator balance = new BalanceAccumulator("ACC778899", FROM, TO);
+        txns.forEach(balance);
+        assertEquals(925, balance.getRelativeBalance());
+        assertEquals(2, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testParityWithNaiveCalculation() {
+        List<TransactionRecord> txns = new TransactionGenerator(20, 0.1, 7).generate(5000);
+        LocalDateTime from = TransactionGenerator.START.plusMinutes(500);
+        LocalDateTime to = TransactionGenerator.START.plusMinutes(4000);
+        // a payment is reversed by a reversal from its paying account, for both of its accounts
+        Set<String> reversed = txns.stream()
+                                   .filter(rec -> rec.getOrigTransactionid() != null)
+                                   .map(rec -> (rec.getFromAccountId() + "/" + rec.getOrigTransactionid()).toUpperCase())
+                                   .collect(Collectors.toSet());
+        for (int i = 0; i < 20; i++) {
+            String accountId = TransactionGenerator.accountId(i);
+            BalanceAccumulator balance = new BalanceAccumulator(accountId, from, to);
+            txns.forEach(balance);
+
+            long expected = 0;
+            int expectedSize = 0;
+            for (TransactionRecord rec : txns) {
+                if (rec.getTxnType() != TransactionType.PAYMENT || !rec.getCreatedAt().isAfter(from) ||
+                        !rec.getCreatedAt().isBefore(to) ||
+                        reversed.contains((rec.getFromAccountId() + "/" + rec.getTransactionId()).toUpperCase())) {
+                    continue;
+                }
+                if (accountId.equalsIgnoreCase(rec.getToAccountId())) {
+                    expected += rec.getAmountMinorUnits();
+                    expectedSize++;
+                }
+                if (accountId.equalsIgnoreCase(rec.getFromAccountId())) {
+                    expected -= rec.getAmountMinorUnits();
+                    expectedSize++;
+                }
+            }
+            assertEquals(expected, balance.getRelativeBalance());
+            assertEquals(expectedSize, balance.getTxnsSize());
+        }
+    }
+
+    @Test
+    public final void testSumIsExact() {
+        // 0.10 is not exact in binary, a million of them summed as doubles drift away from 100000.00
+        BalanceAccumulator balance = new BalanceAccumulator("ACC1", Long.MIN_VALUE + 1, Long.MAX_VALUE);
+        for (int i = 0; i < 1000000; i++) {
+            balance.accept(payment("ACC2", "ACC1", 10));
+        }
+        assertEquals(10000000, balance.getRelativeBalance());
+        assertEquals(1000000, balance.getTxnsSize());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public final void testOverflowIsDetected() {
+        BalanceAccumulator balance = new BalanceAccumulator("ACC1", Long.MIN_VALUE + 1, Long.MAX_VALUE);
+        balance.accept(payment("ACC2", "ACC1", Long.MAX_VALUE));
+        balance.accept(payment("ACC2", "ACC1", 1));
+    }
+
+    private static TransactionRecord payment(String fromAccountId, String toAccountId, long minorUnits) {
+        TransactionRecord rec = new TransactionRecord();
+        rec.setTransactionId("TX1");
+        rec.setFromAccountId(fromAccountId);
+        rec.setToAccountId(toAccountId);
+        rec.setCreatedAtEpochSecond(0);
+        rec.setAmountMinorUnits(minorUnits);
+        rec.setTxnType(TransactionType.PAYMENT);
+        return rec;
+    }
+}
@@ -0,0 +1,108 @@
+package com.meb.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.store.AccountIndex;
+import com.meb.store.TransactionStore;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+
+/**
+ * Unit tests for {@link BatchQueryProcessor}
+ *
+ * @author sundeep
+ *
+ */
+public class BatchQueryProcessorTest {
+
+    private Path file;
+    private Path queryFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("batch", ".csv");
+        queryFile = Files.createTempFile("queries", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(queryFile);
+    }
+
+    @Test
+    public final void testResultsMatchSingleQueries() throws Exception {
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(15, 0.1, 5).generate(3000));
+        TransactionStore store = InputIngester.loadStore(file.toString());
+
+        // queries in random account order, results must come back in query file order
+        Random random = new Random(3);
+        List<String> queries = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        queries.add("accountId, fromDate, toDate");
+        expected.add(BatchQueryProcessor.HEADER);
+        for (int i = 0; i < 200; i++) {
+            String accountId = TransactionGenerator.accountId(random.nextInt(15));
+            String from = TimestampCodec.FORMATTER.format(TransactionGenerator.START.plusMinutes(random.nextInt(3000)));
+            String to = TimestampCodec.FORMATTER.format(TransactionGenerator.START.plusMinutes(3000 + random.nextInt(100)));
+            queries.add(accountId + ", " + from + ", " + to);
+            BalanceResult result = store.calculateBalance(accountId, TimestampCodec.parseEpochSecond(from),
+                                                          TimestampCodec.parseEpochSecond(to));
+            expected.add(accountId + ", " + from + ", " + to + ", " +
+                         new BigDecimal(result.getRelativeBalance()).movePointLeft(2) + ", " + result.getTxnsSize());
+        }
+        Files.write(queryFile, queries);
+
+        StringWriter out = new StringWriter();
+        int answered = new BatchQueryProcessor(AccountIndex.build(store)).process(queryFile.toString(), out);
+        assertEquals(200, answered);
+        assertEquals(String.join("\n", expected) + "\n", out.toString());
+    }
+
+    @Test
+    public final void testInvalidQueriesSkippedOnOneLine() throws Exception {
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(5, 0.1, 5).generate(100));
+        String from = TimestampCodec.FORMATTER.format(TransactionGenerator.START);
+        String to = TimestampCodec.FORMATTER.format(TransactionGenerator.START.plusMinutes(50));
+        Files.write(queryFile, Arrays.asList("accountId, fromDate, toDate",
+                                             TransactionGenerator.accountId(1) + ", " + from + ", " + to,
+                                             TransactionGenerator.accountId(2) + ", " + to + ", " + from,
+                                             TransactionGenerator.accountId(3) + ", not a date, " + to,
+                                             TransactionGenerator.accountId(4) + ", " + from + ", " + to));
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(console));
+        StringWriter out = new StringWriter();
+        try {
+            assertEquals(2, new BatchQueryProcessor(AccountIndex.build(InputIngester.loadStore(file.toString())))
+                    .process(queryFile.toString(), out));
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(3, out.toString().split("\n").length);
+        String[] skipped = console.toString().split(System.lineSeparator());
+        assertEquals(2, skipped.length);
+        assertEquals("Skipping query 2 (From-date is later than To-date) : " + TransactionGenerator.accountId(2) + ", " +
+                     to + ", " + from, skipped[0]);
+        assertEquals("Skipping query 3 (Either from date or to date is invalid) : " + TransactionGenerator.accountId(3) +
+                     ", not a date, " + to, skipped[1]);
+    }
+}
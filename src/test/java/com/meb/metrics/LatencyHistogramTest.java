@@ -0,0 +1,47 @@
+package com.meb.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ *
+ * @author sundeep
+ *
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public final void testBuckets() {
+        for (long value : new long[] { 0, 1, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(value + " above " + upper, value <= upper);
+            assertTrue(value + " far below " + upper, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public final void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99));
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getMean());
+        assertEquals(1000000, histogram.getMax());
+        assertWithin(500000, histogram.getPercentile(0.5));
+        assertWithin(990000, histogram.getPercentile(0.99));
+        assertEquals(1000000, histogram.getPercentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, actual >= expected && actual - expected <= expected / 8);
+    }
+}
@@ -0,0 +1,52 @@
+package com.meb.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Metrics}
+ *
+ * @author sundeep
+ *
+ */
+public class MetricsTest {
+
+    @Test
+    public final void testSummary() {
+        Metrics metrics = new Metrics();
+        metrics.addParsed(100, 5000, 20000);
+        metrics.addParsed(100, 5000, 20000);
+        metrics.addRejected(2);
+        metrics.addIngestTime(1000000);
+        metrics.addReversalsMatched(3);
+        metrics.addReversalsOrphaned(1);
+        metrics.recordQuery(2000);
+
+        assertEquals(200, metrics.getRowsRead());
+        assertEquals(2, metrics.getRowsRejected());
+        assertEquals(10000000, metrics.getBytesPerSecond());
+        assertEquals(200, metrics.getParseNanosPerRow());
+        assertEquals("{\"rowsRead\":200,\"rowsRejected\":2,\"bytesRead\":10000,\"bytesPerSecond\":10000000," +
+                     "\"parseNanosPerRow\":200,\"reversalsMatched\":3,\"reversalsOrphaned\":1," +
+                     "\"queries\":1," +
+                     "\"queryLatencyMicros\":{\"mean\":2,\"p50\":2,\"p99\":2,\"p999\":2,\"max\":2}}", metrics.toJson());
+
+        metrics.reset();
+        assertEquals(0, metrics.getRowsRead());
+        assertEquals(0, metrics.getQueries());
+    }
+
+    @Test
+    public final void testJmx() throws Exception {
+        Metrics.get().register();
+        Metrics.get().register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(Metrics.get().getRowsRead(), server.getAttribute(new ObjectName(Metrics.OBJECT_NAME), "RowsRead"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.meb.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.store.AccountIndex;
+import com.meb.util.InputIngester;
+
+/**
+ * Unit tests for {@link QueryServer}. The load generator is QueryServerBenchmark
+ *
+ * @author sundeep
+ *
+ */
+public class QueryServerTest {
+
+    private QueryServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        AccountIndex index = AccountIndex.build(InputIngester.loadStore("src/test/resources/transactions2.csv"));
+        server = new QueryServer(index, 0, 2);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public final void testBalanceQuery() throws IOException {
+        HttpURLConnection conn = query("acc334455", "20/10/2018 12:00:00", "21/10/2018 19:00:00");
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("{\"accountId\":\"acc334455\",\"fromDate\":\"20/10/2018 12:00:00\",\"toDate\":\"21/10/2018 19:00:00\"," +
+                     "\"relativeBalance\":5.75,\"txnsSize\":3}", read(conn.getInputStream()));
+    }
+
+    @Test
+    public final void testInvalidQuery() throws IOException {
+        HttpURLConnection conn = query("ACC334455", "21/10/2018 19:00:00", "20/10/2018 12:00:00");
+        assertEquals(400, conn.getResponseCode());
+        assertEquals("{\"error\":\"From-date is later than To-date\"}", read(conn.getErrorStream()));
+
+        conn = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + QueryServer.BALANCE_PATH).openConnection();
+        assertEquals(400, conn.getResponseCode());
+        assertEquals("{\"error\":\"Account Id is empty\"}", read(conn.getErrorStream()));
+    }
+
+    @Test
+    public final void testBoundToLoopback() {
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+    }
+
+    private HttpURLConnection query(String accountId, String fromDate, String toDate) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + QueryServer.BALANCE_PATH +
+                          "?accountId=" + URLEncoder.encode(accountId, "UTF-8") +
+                          "&fromDate=" + URLEncoder.encode(fromDate, "UTF-8") +
+                          "&toDate=" + URLEncoder.encode(toDate, "UTF-8"));
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        try (InputStream stream = in) {
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
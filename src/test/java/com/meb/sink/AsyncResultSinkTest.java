@@ -0,0 +1,83 @@
+package com.meb.sink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.meb.vo.BalanceResult;
+import com.meb.vo.QueryResult;
+
+/**
+ * Unit tests for {@link AsyncResultSink}
+ *
+ * @author sundeep
+ *
+ */
+public class AsyncResultSinkTest {
+
+    @Test
+    public final void testResultsWrittenInOrder() throws IOException {
+        List<QueryResult> written = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        boolean[] closed = new boolean[1];
+        ResultSink target = new ResultSink() {
+            @Override
+            public void publish(QueryResult result) {
+                written.add(result);
+                if (writers.isEmpty()) {
+                    writers.add(Thread.currentThread());
+                }
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        try (AsyncResultSink sink = new AsyncResultSink(target)) {
+            for (int i = 0; i < 20000; i++) {
+                sink.publish(result(i));
+            }
+        }
+        assertEquals(20000, written.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(i, written.get(i).getTxnsSize());
+        }
+        assertTrue(writers.get(0) != Thread.currentThread());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public final void testWriteErrorIsThrown() throws IOException {
+        AsyncResultSink sink = new AsyncResultSink(result -> {
+            throw new IOException("disk full");
+        });
+        try {
+            for (int i = 0; i < 100000; i++) {
+                sink.publish(result(i));
+            }
+            fail("The write error was not thrown");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        try {
+            sink.close();
+            fail("The write error was not thrown");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        // a closed sink is closed once
+        sink.close();
+    }
+
+    private static QueryResult result(int i) {
+        return new QueryResult("ACC" + i, "20/10/2018 12:00:00", "21/10/2018 19:00:00", new BalanceResult(i, i));
+    }
+}
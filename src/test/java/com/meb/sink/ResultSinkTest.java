@@ -0,0 +1,75 @@
+package com.meb.sink;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.vo.BalanceResult;
+import com.meb.vo.QueryResult;
+
+/**
+ * Unit tests for the {@link ResultSink} implementations
+ *
+ * @author sundeep
+ *
+ */
+public class ResultSinkTest {
+
+    private static final QueryResult RESULT = new QueryResult("ACC334455", "20/10/2018 12:00:00", "21/10/2018 19:00:00",
+                                                              new BalanceResult(-2500, 1));
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("results", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testConsole() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ConsoleResultSink(new PrintStream(out)).publish(RESULT);
+        assertEquals(String.format("%nRelative balance for the period is: -$25.00%nNumber of transactions included is: 1%n"),
+                     out.toString());
+    }
+
+    @Test
+    public final void testCsvFile() throws IOException {
+        try (ResultSink sink = ResultSink.open(file)) {
+            sink.publish(RESULT);
+        }
+        assertEquals(Arrays.asList(CsvResultSink.HEADER, "ACC334455, 20/10/2018 12:00:00, 21/10/2018 19:00:00, -25.00, 1"),
+                     Files.readAllLines(file));
+    }
+
+    @Test
+    public final void testJsonLinesFile() throws IOException {
+        Path jsonFile = Files.createTempFile("results", ".JSONL");
+        try {
+            try (ResultSink sink = ResultSink.open(jsonFile)) {
+                sink.publish(RESULT);
+                sink.publish(new QueryResult("ACC\"1", "a", "b", new BalanceResult(5, 2)));
+            }
+            assertEquals(Arrays.asList("{\"accountId\":\"ACC334455\",\"fromDate\":\"20/10/2018 12:00:00\"," +
+                                       "\"toDate\":\"21/10/2018 19:00:00\",\"relativeBalance\":-25.00,\"txnsSize\":1}",
+                                       "{\"accountId\":\"ACC\\\"1\",\"fromDate\":\"a\",\"toDate\":\"b\",\"relativeBalance\":0.05,\"txnsSize\":2}"),
+                         Files.readAllLines(jsonFile));
+        } finally {
+            Files.deleteIfExists(jsonFile);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Unit tests for {@link AccountIndex}
+ *
+ * @author sundeep
+ *
+ */
+public class AccountIndexTest {
+
+    private Path file;
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("index", ".csv");
+        indexFile = Paths.get(file + AccountIndex.FILE_SUFFIX);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile);
+    }
+
+    @Test
+    public final void testSampleFile() {
+        AccountIndex index = AccountIndex.build(InputIngester.loadStore("src/test/resources/transactions2.csv"));
+        BalanceResult balance = index.calculateBalance("acc334455", TimestampCodec.parseEpochSecond("20/10/2018 12:00:00"),
+                                                       TimestampCodec.parseEpochSecond("21/10/2018 19:00:00"));
+        assertEquals(575, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testRandomRangesMatchStore() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(12, 0.1, 21).generate(4000);
+        // shuffle so that the index has to sort by time
+        Collections.shuffle(txns, new Random(4));
+        TransactionGenerator.writeCsv(file, txns);
+        TransactionStore store = InputIngester.loadStore(file.toString());
+        AccountIndex index = AccountIndex.build(store);
+
+        Random random = new Random(8);
+        long start = TimestampCodec.toEpochSecond(TransactionGenerator.START);
+        for (int i = 0; i < 500; i++) {
+            String accountId = TransactionGenerator.accountId(random.nextInt(12));
+            long from = start + random.nextInt(4000 * 60);
+            long to = random.nextInt(10) == 0 ? from - 60 : from + random.nextInt(4000 * 60);
+            BalanceResult expected = store.calculateBalance(accountId, from, to);
+            BalanceResult actual = index.calculateBalance(accountId, from, to);
+            assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+            assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+        }
+    }
+
+    @Test
+    public final void testSideFileRoundTrip() throws IOException {
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(5, 0.1, 2).generate(500));
+        AccountIndex built = InputIngester.loadIndex(file.toString());
+        assertTrue(Files.exists(indexFile));
+
+        AccountIndex read = AccountIndex.read(indexFile, file);
+        assertNotNull(read);
+        assertEquals(built.size(), read.size());
+        for (int i = 0; i < 5; i++) {
+            String accountId = TransactionGenerator.accountId(i);
+            BalanceResult expected = built.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE);
+            BalanceResult actual = read.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+            assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+        }
+    }
+
+    @Test
+    public final void testStaleSideFileIsRebuilt() throws IOException {
+        TransactionGenerator.writeCsv(file, new TransactionGenerator(5, 0.1, 2).generate(500));
+        InputIngester.loadIndex(file.toString());
+
+        Files.write(file, "TX99999, ACC000001, ACC000002, 01/10/2018 00:30:30, 1.00, PAYMENT\n".getBytes(),
+                    StandardOpenOption.APPEND);
+        assertNull(AccountIndex.read(indexFile, file));
+        assertEquals(501, InputIngester.loadIndex(file.toString()).size());
+        assertNotNull(AccountIndex.read(indexFile, file));
+    }
+
+    @Test
+    public final void testLargeBalancesOfSeparateAccounts() throws IOException {
+        // each account is far from overflowing, the sums over all accounts are not
+        Files.write(file, Arrays.asList("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType",
+                                        "TX1, ACC1, ACC2, 20/10/2018 12:00:00, 60000000000000000.00, PAYMENT",
+                                        "TX2, ACC3, ACC4, 20/10/2018 13:00:00, 60000000000000000.00, PAYMENT"));
+        AccountIndex index = AccountIndex.build(InputIngester.loadStore(file.toString()));
+        assertEquals(-6000000000000000000L, index.calculateBalance("ACC3", Long.MIN_VALUE, Long.MAX_VALUE).getRelativeBalance());
+        assertEquals(6000000000000000000L, index.calculateBalance("ACC4", Long.MIN_VALUE, Long.MAX_VALUE).getRelativeBalance());
+
+        index.write(indexFile, file);
+        assertEquals(6000000000000000000L, AccountIndex.read(indexFile, file)
+                .calculateBalance("ACC2", Long.MIN_VALUE, Long.MAX_VALUE).getRelativeBalance());
+    }
+}
@@ -0,0 +1,175 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Unit tests for {@link BalanceCube}
+ *
+ * @author sundeep
+ *
+ */
+public class BalanceCubeTest {
+
+    private static final int ACCOUNTS = 12;
+    private static final int ROWS = 8000;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("cube", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testSampleFile() {
+        BalanceCube cube = BalanceCube.build(AccountIndex.build(InputIngester.loadStore("src/test/resources/transactions2.csv")));
+        BalanceResult balance = cube.calculateBalance("acc334455", TimestampCodec.parseEpochSecond("20/10/2018 12:00:00"),
+                                                      TimestampCodec.parseEpochSecond("21/10/2018 19:00:00"));
+        assertEquals(575, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testRandomRangesMatchStore() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(ACCOUNTS, 0.1, 90, 21).generate(ROWS);
+        // shuffle so that the buckets have to be filled out of row order
+        Collections.shuffle(txns, new Random(4));
+        TransactionGenerator.writeCsv(file, txns);
+        TransactionStore store = InputIngester.loadStore(file.toString());
+        BalanceCube cube = BalanceCube.build(AccountIndex.build(store));
+
+        Random random = new Random(8);
+        long start = TimestampCodec.toEpochSecond(TransactionGenerator.START);
+        for (int i = 0; i < 2000; i++) {
+            String accountId = TransactionGenerator.accountId(random.nextInt(ACCOUNTS));
+            long from = bound(random, start);
+            long to;
+            switch (random.nextInt(5)) {
+            case 0:
+                to = from + random.nextInt(3 * 60 * 60);
+                break;
+            case 1:
+                to = from - random.nextInt(60 * 60);
+                break;
+            default:
+                to = bound(random, start);
+            }
+            assertBalanceEquals(store.calculateBalance(accountId, from, to), cube.calculateBalance(accountId, from, to));
+        }
+        for (int a = 0; a < ACCOUNTS; a++) {
+            String accountId = TransactionGenerator.accountId(a);
+            assertBalanceEquals(store.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE),
+                       cube.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        assertEquals(0, cube.calculateBalance("ACC999999", Long.MIN_VALUE, Long.MAX_VALUE).getTxnsSize());
+    }
+
+    @Test
+    public final void testAccountSortedFile() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(ACCOUNTS, 0.1, 90, 5).generate(ROWS);
+        // every hour then holds rows of each account far apart in the file
+        txns.sort(Comparator.comparing(TransactionRecord::getFromAccountId));
+        TransactionGenerator.writeCsv(file, txns);
+        TransactionStore store = InputIngester.loadStore(file.toString());
+
+        BalanceCube cube = BalanceCube.build(AccountIndex.build(store));
+        assertEquals(ROWS, cube.size());
+        assertEquals(store.getOrphanReversals().length, cube.getOrphanReversals());
+
+        Random random = new Random(2);
+        long start = TimestampCodec.toEpochSecond(TransactionGenerator.START);
+        int maxProbes = 0;
+        for (int i = 0; i < 1000; i++) {
+            String accountId = TransactionGenerator.accountId(random.nextInt(ACCOUNTS));
+            long from = bound(random, start);
+            long to = bound(random, start);
+            assertBalanceEquals(store.calculateBalance(accountId, from, to), cube.calculateBalance(accountId, from, to));
+            maxProbes = Math.max(maxProbes, cube.getProbes(accountId, from, to));
+        }
+        // a few binary searches among the buckets of one account, not a walk over the rows of an hour
+        assertTrue("probes " + maxProbes, maxProbes <= 48);
+    }
+
+    @Test
+    public final void testBucketsPerAccountAndTime() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(ACCOUNTS, 0.1, 7).generate(ROWS);
+        TransactionGenerator.writeCsv(file, txns);
+        BalanceCube cube = BalanceCube.build(AccountIndex.build(InputIngester.loadStore(file.toString())));
+
+        Set<String> reversed = new HashSet<>();
+        for (TransactionRecord txn : txns) {
+            if (txn.getOrigTransactionid() != null) {
+                reversed.add(txn.getFromAccountId() + ',' + txn.getOrigTransactionid());
+            }
+        }
+        Set<String> hours = new HashSet<>();
+        Set<String> days = new HashSet<>();
+        for (TransactionRecord txn : txns) {
+            if (txn.getTxnType() != TransactionType.PAYMENT ||
+                    reversed.contains(txn.getFromAccountId() + ',' + txn.getTransactionId())) {
+                continue;
+            }
+            long hour = Math.floorDiv(txn.getCreatedAtEpochSecond(), 60 * 60);
+            long day = Math.floorDiv(hour, 24);
+            // a payment to itself takes one bucket
+            for (String accountId : new String[] { txn.getFromAccountId(), txn.getToAccountId() }) {
+                hours.add(accountId + ',' + hour);
+                days.add(accountId + ',' + day);
+            }
+        }
+        assertEquals(hours.size(), cube.getHourBuckets());
+        assertEquals(days.size(), cube.getDayBuckets());
+        // one row a minute
+        assertTrue(cube.getHourBuckets() <= ACCOUNTS * (ROWS / 60 + 1));
+    }
+
+    /**
+     * Random range bound, often on an hour or a day boundary or next to a payment
+     *
+     */
+    private static long bound(Random random, long start) {
+        long time = start + random.nextInt((ROWS + 180) * 60) - 90 * 60;
+        switch (random.nextInt(4)) {
+        case 0:
+            return Math.floorDiv(time, 60 * 60) * 60 * 60;
+        case 1:
+            return Math.floorDiv(time, 24 * 60 * 60) * 24 * 60 * 60;
+        case 2:
+            return Math.floorDiv(time, 60) * 60 + random.nextInt(3) - 1;
+        default:
+            return time;
+        }
+    }
+
+    private static void assertBalanceEquals(BalanceResult expected, BalanceResult actual) {
+        assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+        assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+    }
+}
@@ -0,0 +1,74 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link IdDictionary}
+ *
+ * @author sundeep
+ *
+ */
+public class IdDictionaryTest {
+
+    @Test
+    public final void testDenseCodes() {
+        IdDictionary dictionary = new IdDictionary();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, dictionary.code("TX" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, dictionary.code("TX" + i));
+            assertEquals(i, dictionary.find("TX" + i));
+            assertEquals("TX" + i, dictionary.get(i));
+        }
+        assertEquals(10000, dictionary.size());
+        assertEquals(IdDictionary.NOT_FOUND, dictionary.find("TX10000"));
+    }
+
+    @Test
+    public final void testWideCharacters() {
+        IdDictionary dictionary = new IdDictionary();
+        int code = dictionary.code("ACC\u20ac1");
+        dictionary.code("ACC\u00e91");
+        dictionary.code("ACC\u00ff1");
+        assertEquals("ACC\u20ac1", dictionary.get(code));
+        assertEquals("ACC\u00c91", dictionary.get(code + 1));
+        assertEquals("ACC\u01781", dictionary.get(code + 2));
+        assertEquals(code, dictionary.find("acc\u20ac1"));
+        assertEquals(code + 1, dictionary.find("ACC\u00c91"));
+        assertEquals(code + 2, dictionary.find("acc\u00ff1"));
+    }
+
+    @Test
+    public final void testCaseInsensitiveCodes() {
+        IdDictionary dictionary = new IdDictionary();
+        int code = dictionary.code("acc334455");
+        assertEquals(code, dictionary.code("ACC334455"));
+        assertEquals(code, dictionary.find("Acc334455"));
+        assertEquals("ACC334455", dictionary.get(code));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public final void testRangeOfLine() {
+        IdDictionary dictionary = new IdDictionary();
+        String line = "TX10004, ACC334455, ACC998877, 20/10/2018 19:45:00, 10.50, REVERSAL, tx10002";
+        int orig = dictionary.code(line, line.length() - 7, line.length());
+        assertEquals(orig, dictionary.find("TX10002"));
+        assertEquals(IdDictionary.NOT_FOUND, dictionary.find(line, 0, 7));
+        assertEquals(orig, dictionary.find(new StringBuilder("x tx10002 y"), 2, 9));
+    }
+
+    @Test
+    public final void testCodeAfterTrim() {
+        IdDictionary dictionary = new IdDictionary();
+        dictionary.code("A");
+        dictionary.code("B");
+        dictionary.trimToSize();
+        assertEquals(2, dictionary.code("C"));
+        assertEquals("C", dictionary.get(2));
+        assertEquals(1, dictionary.find("B"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.util.InputIngester;
+import com.meb.util.TailFollower;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Unit tests for {@link LiveBalances}
+ *
+ * @author sundeep
+ *
+ */
+public class LiveBalancesTest {
+
+    private Path file;
+    private Path followed;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("live", ".csv");
+        followed = Files.createTempFile("followed", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(followed);
+    }
+
+    @Test
+    public final void testReversalCancelsEarlierPayment() throws IOException {
+        LiveBalances balances = new LiveBalances();
+        TailFollower follower = new TailFollower(followed.toString(), balances);
+        append("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction\n" +
+               "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT\n" +
+               "TX10002, ACC778899, ACC334455, 20/10/2018 13:00:00, 5.00, PAYMENT\n");
+        follower.poll();
+        assertEquals(-2000, balances.getBalance("acc334455").getRelativeBalance());
+        assertEquals(2, balances.getBalance("ACC334455").getTxnsSize());
+
+        // a day later the payment is reversed, which changes the balance of the day it was made
+        append("TX10003, ACC334455, ACC778899, 21/10/2018 12:47:55, 25.00, REVERSAL, TX10001\n");
+        follower.poll();
+        assertEquals(500, balances.getBalance("ACC334455").getRelativeBalance());
+        assertEquals(1, balances.getBalance("ACC334455").getTxnsSize());
+        // and the receiving side of the payment
+        assertEquals(-500, balances.getBalance("ACC778899").getRelativeBalance());
+        assertEquals(1, balances.getBalance("ACC778899").getTxnsSize());
+        BalanceResult day = balances.calculateBalance("ACC334455", TimestampCodec.parseEpochSecond("20/10/2018 00:00:00"),
+                                                      TimestampCodec.parseEpochSecond("21/10/2018 00:00:00"));
+        assertEquals(500, day.getRelativeBalance());
+        assertEquals(1, day.getTxnsSize());
+    }
+
+    @Test
+    public final void testAppendedPiecesMatchStore() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(10, 0.15, 17).generate(3000);
+        // shuffle so that some reversals arrive before the payment they reverse
+        Collections.shuffle(txns, new Random(6));
+        TransactionGenerator.writeCsv(file, txns);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // append the file in pieces which split lines
+        LiveBalances balances = new LiveBalances();
+        TailFollower follower = new TailFollower(followed.toString(), balances);
+        Random random = new Random(9);
+        for (int written = 0; written < bytes.length; ) {
+            int piece = Math.min(bytes.length - written, 1 + random.nextInt(4000));
+            Files.write(followed, Arrays.copyOfRange(bytes, written, written + piece), StandardOpenOption.APPEND);
+            written += piece;
+            follower.poll();
+        }
+        assertEquals(3000, balances.size());
+
+        TransactionStore store = InputIngester.loadStore(file.toString());
+        long start = TimestampCodec.toEpochSecond(TransactionGenerator.START);
+        for (int i = 0; i < 300; i++) {
+            String accountId = TransactionGenerator.accountId(random.nextInt(10));
+            long from = start + random.nextInt(3000 * 60);
+            long to = from + random.nextInt(3000 * 60);
+            assertEquals(store.calculateBalance(accountId, from, to).toString(),
+                         balances.calculateBalance(accountId, from, to).toString());
+        }
+        for (int a = 0; a < 10; a++) {
+            String accountId = TransactionGenerator.accountId(a);
+            assertEquals(store.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE).toString(),
+                         balances.getBalance(accountId).toString());
+            assertEquals(store.calculateBalance(accountId, start - 1, start + 3001 * 60).toString(),
+                         balances.calculateBalance(accountId, start - 1, start + 3001 * 60).toString());
+        }
+    }
+
+    @Test
+    public final void testReversalCancelsEveryPaymentOfThePair() throws IOException {
+        LiveBalances balances = new LiveBalances();
+        TailFollower follower = new TailFollower(followed.toString(), balances);
+        append("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction\n" +
+               "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT\n" +
+               "TX10001, ACC334455, ACC998877, 20/10/2018 12:50:00, 10.00, PAYMENT\n" +
+               "TX10001, ACC778899, ACC334455, 20/10/2018 12:55:00, 7.00, PAYMENT\n" +
+               "TX10002, ACC334455, ACC778899, 20/10/2018 13:00:00, 5.00, PAYMENT\n" +
+               "TX10003, ACC334455, ACC778899, 20/10/2018 14:00:00, 25.00, REVERSAL, TX10001\n");
+        follower.poll();
+        // both payments of ACC334455 with TX10001 are cancelled, the one of ACC778899 is not
+        BalanceResult all = balances.calculateBalance("ACC334455", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(200, all.getRelativeBalance());
+        assertEquals(2, all.getTxnsSize());
+        assertEquals(all.toString(), balances.getBalance("ACC334455").toString());
+        assertEquals(0, balances.getBalance("ACC998877").getTxnsSize());
+        BalanceResult range = balances.calculateBalance("ACC334455", TimestampCodec.parseEpochSecond("20/10/2018 12:00:00"),
+                                                        TimestampCodec.parseEpochSecond("20/10/2018 12:59:00"));
+        assertEquals(700, range.getRelativeBalance());
+        assertEquals(1, range.getTxnsSize());
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(followed, text.getBytes(), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,53 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ReversalIndex}
+ *
+ * @author sundeep
+ *
+ */
+public class ReversalIndexTest {
+
+    @Test
+    public final void testFindAfterGrowth() {
+        ReversalIndex index = new ReversalIndex();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(index.add(i * 3, i % 7, i));
+        }
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, index.find(i * 3, i % 7));
+            assertEquals(ReversalIndex.NOT_FOUND, index.find(i * 3 + 1, i % 7));
+        }
+        int[] rows = index.rows();
+        Arrays.sort(rows);
+        assertEquals(9999, rows[9999]);
+    }
+
+    @Test
+    public final void testPayerIsPartOfTheKey() {
+        ReversalIndex index = new ReversalIndex();
+        assertEquals(ReversalIndex.NOT_FOUND, index.find(5, 1));
+        assertTrue(index.add(5, 1, 10));
+        assertTrue(index.add(5, 2, 11));
+        assertFalse(index.add(5, 1, 12));
+        assertEquals(10, index.find(5, 1));
+        assertEquals(11, index.find(5, 2));
+        assertEquals(ReversalIndex.NOT_FOUND, index.find(5, 3));
+        assertArrayEquals(new int[] { 10, 11 }, sorted(index.rows()));
+    }
+
+    private static int[] sorted(int[] rows) {
+        Arrays.sort(rows);
+        return rows;
+    }
+}
@@ -0,0 +1,199 @@
+package com.meb.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.engine.BalanceAccumulator;
+import com.meb.util.InputIngester;
+import com.meb.util.TimestampCodec;
+import com.meb.vo.BalanceResult;
+import com.meb.vo.TransactionRecord;
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Unit tests for {@link TransactionStore}
+ *
+ * @author sundeep
+ *
+ */
+public class TransactionStoreTest {
+
+    @Test
+    public final void testLoadSampleFile() {
+        TransactionStore store = InputIngester.loadStore("src/test/resources/transactions2.csv");
+        assertEquals(9, store.size());
+        assertEquals(3, store.getAccountIds().size());
+
+        BalanceResult balance = store.calculateBalance("acc334455", TimestampCodec.parseEpochSecond("20/10/2018 12:00:00"),
+                                                       TimestampCodec.parseEpochSecond("21/10/2018 19:00:00"));
+        assertEquals(575, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testRecordView() {
+        TransactionStore store = InputIngester.loadStore("src/test/resources/transactions2.csv");
+        TransactionRecord rec = store.getRecord(2);
+        assertEquals("TX10004", rec.getTransactionId());
+        assertEquals("ACC334455", rec.getFromAccountId());
+        assertEquals("ACC998877", rec.getToAccountId());
+        assertEquals(TimestampCodec.parseEpochSecond("20/10/2018 19:45:00"), rec.getCreatedAtEpochSecond());
+        assertEquals(10.5, rec.getAmount(), 0);
+        assertEquals(TransactionType.REVERSAL, rec.getTxnType());
+        assertEquals("TX10002", rec.getOrigTransactionid());
+        assertNull(store.getRecord(0).getOrigTransactionid());
+    }
+
+    @Test
+    public final void testBalancesMatchAccumulator() throws IOException {
+        Path file = Files.createTempFile("store", ".csv");
+        try {
+            List<TransactionRecord> txns = new TransactionGenerator(15, 0.1, 9).generate(5000);
+            TransactionGenerator.writeCsv(file, txns);
+            TransactionStore store = InputIngester.loadStore(file.toString());
+            assertEquals(5000, store.size());
+
+            long from = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(200));
+            long to = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(4500));
+            for (int i = 0; i < 15; i++) {
+                String accountId = TransactionGenerator.accountId(i);
+                BalanceAccumulator expected = new BalanceAccumulator(accountId, from, to);
+                txns.forEach(expected);
+                BalanceResult actual = store.calculateBalance(accountId, from, to);
+                assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+                assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public final void testSharedDictionaries() {
+        IdDictionary accountIds = new IdDictionary();
+        IdDictionary txnIds = new IdDictionary();
+        TransactionStore first = InputIngester.loadStore("src/test/resources/transactions1.csv", accountIds, txnIds);
+        TransactionStore second = InputIngester.loadStore("src/test/resources/transactions2.csv", accountIds, txnIds);
+        assertEquals(first.getFromAccountId(0), second.getFromAccountId(0));
+        assertEquals(first.getTxnId(0), second.getTxnId(0));
+        assertEquals(3, accountIds.size());
+    }
+
+    @Test
+    public final void testCaseInsensitiveReversal() {
+        TransactionStore store = new TransactionStore();
+        store.add("tx1", "acc1", "ACC2", 10, 500, TransactionType.PAYMENT, null);
+        store.add("TX2", "ACC1", "acc2", 20, 500, TransactionType.REVERSAL, "Tx1");
+        store.add("TX3", "Acc1", "ACC2", 30, 250, TransactionType.PAYMENT, null);
+        BalanceResult balance = store.calculateBalance("ACC1", 0, 100);
+        assertEquals(-250, balance.getRelativeBalance());
+        assertEquals(1, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testReversalOnBothSidesAndOrphans() {
+        TransactionStore store = new TransactionStore();
+        store.add("TX1", "ACC1", "ACC2", 10, 500, TransactionType.PAYMENT, null);
+        store.add("TX2", "ACC1", "ACC2", 20, 500, TransactionType.REVERSAL, "TX1");
+        store.add("TX3", "ACC1", "ACC2", 30, 250, TransactionType.PAYMENT, null);
+        store.add("TX4", "ACC2", "ACC1", 40, 250, TransactionType.REVERSAL, "TX3");     // not the payer of TX3
+        store.add("TX5", "ACC1", "ACC2", 50, 100, TransactionType.REVERSAL, "TX9");     // TX9 never appears
+        store.add("TX6", "ACC1", "ACC2", 60, 500, TransactionType.REVERSAL, "TX1");     // reversed already
+
+        BalanceResult balance = store.calculateBalance("ACC2", 0, 100);
+        assertEquals(250, balance.getRelativeBalance());
+        assertEquals(1, balance.getTxnsSize());
+        assertEquals(-250, store.calculateBalance("ACC1", 0, 100).getRelativeBalance());
+        assertTrue(store.isReversed(0));
+        assertFalse(store.isReversed(2));
+        assertEquals(1, store.getReversedPayments().cardinality());
+        assertArrayEquals(new int[] { 3, 4 }, store.getOrphanReversals());
+    }
+
+    @Test
+    public final void testUnknownAccount() {
+        TransactionStore store = InputIngester.loadStore("src/test/resources/transactions2.csv");
+        BalanceResult balance = store.calculateBalance("ACC000000", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(0, balance.getRelativeBalance());
+        assertEquals(0, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testSnapshotRoundTrip() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".csv");
+        Path snapshot = Paths.get(file + TransactionStore.FILE_SUFFIX);
+        try {
+            TransactionGenerator.writeCsv(file, new TransactionGenerator(25, 0.1, 12).generate(2999));
+            TransactionStore written = InputIngester.loadStore(file.toString());
+            written.add("TX99998", "acc\u00e9", "ACC000001", 1, 100, TransactionType.PAYMENT, null);      // wide id
+            written.write(snapshot, file);
+
+            TransactionStore read = TransactionStore.read(snapshot, file);
+            assertNotNull(read);
+            assertEquals(written.size(), read.size());
+            for (int row = 0; row < read.size(); row++) {
+                assertEquals(written.getRecord(row).toString(), read.getRecord(row).toString());
+            }
+            assertEquals(written.getAccountIds().find("ACC\u00c9"), read.getAccountIds().find("acc\u00e9"));
+            for (int i = 0; i < 25; i++) {
+                String accountId = TransactionGenerator.accountId(i);
+                assertEquals(written.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE).toString(),
+                             read.calculateBalance(accountId, Long.MIN_VALUE, Long.MAX_VALUE).toString());
+            }
+
+            // a loaded store can still grow
+            read.add("TX99999", "ACC999999", "ACC000001", 1, 100, TransactionType.REVERSAL, "TX10000");
+            assertEquals(27, read.getAccountIds().size());
+            assertEquals(read.getTxnIds().find("TX10000"), read.getOrigTxnId(3000));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public final void testStaleOrCorruptSnapshot() throws IOException {
+        Path file = Files.createTempFile("snapshot", ".csv");
+        Path snapshot = Paths.get(file + TransactionStore.FILE_SUFFIX);
+        try {
+            TransactionGenerator.writeCsv(file, new TransactionGenerator(5, 0.1, 2).generate(100));
+            InputIngester.writeSnapshot(file.toString());
+            assertEquals(100, InputIngester.loadStore(file.toString()).size());
+
+            Files.write(file, "TX99999, ACC000001, ACC000002, 01/10/2018 00:30:30, 1.00, PAYMENT\n".getBytes(),
+                        StandardOpenOption.APPEND);
+            assertNull(TransactionStore.read(snapshot, file));
+            assertEquals(101, InputIngester.loadStore(file.toString()).size());
+
+            InputIngester.writeSnapshot(file.toString());
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[20]++;
+            Files.write(snapshot, bytes);
+            try {
+                TransactionStore.read(snapshot, file);
+                fail("corrupt header should be rejected");
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals(101, InputIngester.loadStore(file.toString()).size());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.engine.BalanceAccumulator;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Unit tests for {@link ChunkedFileReader}
+ *
+ * @author sundeep
+ *
+ */
+public class ChunkedFileReaderTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("chunked", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testChunkedBalancesMatchStreaming() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(10, 0.1, 5).generate(10000);
+        TransactionGenerator.writeCsv(file, txns);
+        long from = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(1000));
+        long to = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(8000));
+
+        for (int i = 0; i < 10; i++) {
+            String accountId = TransactionGenerator.accountId(i);
+            BalanceAccumulator expected = new BalanceAccumulator(accountId, from, to);
+            InputIngester.streamTransactions(file.toString(), expected);
+
+            // small chunks so that the file is split many times
+            BalanceAccumulator actual = new ChunkedFileReader(3, 4096).read(file.toString(),
+                                                                            () -> new BalanceAccumulator(accountId, from, to),
+                                                                            BalanceAccumulator::merge);
+            assertEquals(10000, actual.getRecordsSize());
+            assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+            assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+        }
+    }
+
+    @Test
+    public final void testLineEndingsAndBlankLines() throws IOException {
+        String csv = "transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction\r\n"
+                   + "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT\r\n"
+                   + "\r\n"
+                   + "   \n"
+                   + "TX10002, ACC334455, ACC998877, 20/10/2018 17:33:43, 10.50, PAYMENT\n"
+                   + "TX10003, ACC334455, ACC998877, 20/10/2018 18:33:43, 1.50, PAYMENT";
+        Files.write(file, csv.getBytes(Charset.defaultCharset()));
+        long from = TimestampCodec.parseEpochSecond("20/10/2018 12:00:00");
+        long to = TimestampCodec.parseEpochSecond("21/10/2018 12:00:00");
+
+        BalanceAccumulator balance = new ChunkedFileReader(2, 16).read(file.toString(),
+                                                                       () -> new BalanceAccumulator("ACC334455", from, to),
+                                                                       BalanceAccumulator::merge);
+        assertEquals(3, balance.getRecordsSize());
+        assertEquals(-3700, balance.getRelativeBalance());
+        assertEquals(3, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testCompressedMatchesPlain() throws IOException {
+        Path compressed = Files.createTempFile("chunked", ".csv.gz");
+        try {
+            TransactionGenerator.writeCsv(file, new TransactionGenerator(10, 0.1, 8).generate(10000));
+            gzip(file, compressed);
+            long from = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(1000));
+            long to = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(8000));
+
+            for (int i = 0; i < 10; i++) {
+                String accountId = TransactionGenerator.accountId(i);
+                BalanceAccumulator expected = new ChunkedFileReader(2).read(file.toString(),
+                                                                            () -> new BalanceAccumulator(accountId, from, to),
+                                                                            BalanceAccumulator::merge);
+                // small chunks so that lines and the header are cut at block ends
+                BalanceAccumulator actual = new ChunkedFileReader(3, 50).read(compressed.toString(),
+                                                                              () -> new BalanceAccumulator(accountId, from, to),
+                                                                              BalanceAccumulator::merge);
+                assertEquals(10000, actual.getRecordsSize());
+                assertEquals(expected.getRelativeBalance(), actual.getRelativeBalance());
+                assertEquals(expected.getTxnsSize(), actual.getTxnsSize());
+            }
+            assertEquals(10000, InputIngester.loadStore(compressed.toString()).size());
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+    @Test
+    public final void testCompressedMalformedRowLine() throws IOException {
+        Path compressed = Files.createTempFile("chunked", ".csv.gz");
+        try {
+            List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/transactions1.csv")));
+            for (int i = 0; i < 500; i++) {
+                lines.add("TX2" + i + ", ACC1, ACC2, 20/10/2018 12:47:55, 1.00, PAYMENT");
+            }
+            lines.add(400, "TX1, ACC1");
+            Files.write(file, lines);
+            gzip(file, compressed);
+            try {
+                new ChunkedFileReader(2, 1024, Quarantine.STRICT).read(compressed.toString(),
+                                                                       () -> new BalanceAccumulator("ACC1", 0, 1),
+                                                                       BalanceAccumulator::merge);
+                fail("malformed row should stop a strict read");
+            } catch (MalformedRowException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("at line 401 :"));
+            }
+        } finally {
+            Files.deleteIfExists(compressed);
+        }
+    }
+
+    @Test
+    public final void testHeaderOnly() throws IOException {
+        Files.write(file, "transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType\n".getBytes());
+        BalanceAccumulator balance = new ChunkedFileReader(2).read(file.toString(),
+                                                                   () -> new BalanceAccumulator("ACC334455", 0, 1),
+                                                                   BalanceAccumulator::merge);
+        assertEquals(0, balance.getRecordsSize());
+    }
+
+    private static void gzip(Path from, Path to) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(to))) {
+            Files.copy(from, out);
+        }
+    }
+}
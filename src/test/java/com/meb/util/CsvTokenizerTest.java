@@ -0,0 +1,93 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.meb.vo.TransactionRecord.TransactionType;
+
+/**
+ * Unit tests for {@link CsvTokenizer}
+ *
+ * @author sundeep
+ *
+ */
+public class CsvTokenizerTest {
+
+    private final CsvTokenizer tokenizer = new CsvTokenizer();
+
+    @Test
+    public final void testFieldsMatchSplitAndTrim() {
+        String[] lines = { "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT",
+                           "  TX10004 ,ACC334455,  ACC998877 , 20/10/2018 19:45:00 ,10.50,REVERSAL , TX10002  ",
+                           "TX10005, ACC334455, ACC778899,, 2.00, PAYMENT,,",
+                           "\tTX10006,\tACC334455,ACC778899, 21/10/2018 09:30:00, 7.25, PAYMENT, , \t" };
+        for (String line : lines) {
+            String[] expected = line.trim().split(",");
+            assertEquals(expected.length, tokenizer.tokenize(line));
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].trim(), tokenizer.getString(i));
+                assertEquals(expected[i].isEmpty(), tokenizer.isRawEmpty(i));
+            }
+        }
+    }
+
+    @Test
+    public final void testBlankLine() {
+        assertEquals(0, tokenizer.tokenize("   \t "));
+    }
+
+    @Test
+    public final void testTxnType() {
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, REVERSAL , TX0");
+        assertEquals(TransactionType.REVERSAL, tokenizer.getTxnType(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidTxnType() {
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, payment");
+        tokenizer.getTxnType(5);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public final void testMissingField() {
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, REVERSAL");
+        tokenizer.getString(6);
+    }
+
+    @Test
+    public final void testTransactionError() {
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, REVERSAL , TX0");
+        assertEquals(null, tokenizer.getTransactionError());
+        tokenizer.tokenize("TX1, A, B, , 1.00, PAYMENT");
+        assertEquals(null, tokenizer.getTransactionError());
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00");
+        assertEquals("Expected at least 6 fields, found 5", tokenizer.getTransactionError());
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, REFUND");
+        assertEquals("No transaction type REFUND", tokenizer.getTransactionError());
+        tokenizer.tokenize("TX1, A, B, 20/10/2018 12:47:55, 1.00, REVERSAL, ");
+        assertEquals("Reversal without a related transaction", tokenizer.getTransactionError());
+    }
+
+    @Test
+    public final void testMinorUnits() {
+        String[] amounts = { "25.00", "0.1", "-3.5", "+7", "10.", ".25", "10.500", "0.000", "1e3" };
+        long[] expected = { 2500, 10, -350, 700, 1000, 25, 1050, 0, 100000 };
+        for (int i = 0; i < amounts.length; i++) {
+            tokenizer.tokenize("TX1, A, B, , " + amounts[i] + ", PAYMENT");
+            assertEquals(amounts[i], expected[i], tokenizer.getMinorUnits(4));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public final void testSubCentAmountRejected() {
+        tokenizer.tokenize("TX1, A, B, , 10.005, PAYMENT");
+        tokenizer.getMinorUnits(4);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public final void testInvalidAmount() {
+        tokenizer.tokenize("TX1, A, B, , 1.2.3, PAYMENT");
+        tokenizer.getMinorUnits(4);
+    }
+}
@@ -0,0 +1,112 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DecompressingInputStream}
+ *
+ * @author sundeep
+ *
+ */
+public class DecompressingInputStreamTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("compressed", ".csv.gz");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testConcatenatedMembers() throws IOException {
+        // several blocks of content, in two gzip members
+        byte[] content = new byte[3 << 20];
+        Random random = new Random(3);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(gzip(content, 0, 1000000));
+            out.write(gzip(content, 1000000, content.length - 1000000));
+        }
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = DecompressingInputStream.open(file)) {
+            assertEquals('a' + new Random(3).nextInt(4), in.read());
+            byte[] buffer = new byte[7777];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+                read.write(buffer, 0, n);
+            }
+            assertEquals(-1, in.read());
+        }
+        byte[] expected = new byte[content.length - 1];
+        System.arraycopy(content, 1, expected, 0, expected.length);
+        assertArrayEquals(expected, read.toByteArray());
+    }
+
+    @Test
+    public final void testTruncatedFile() throws IOException {
+        byte[] compressed = gzip(new byte[1 << 20], 0, 1 << 20);
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+        try (InputStream in = new DecompressingInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer, 0, buffer.length) >= 0) {
+                // read to the end
+            }
+            fail("truncated file should not read to the end");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public final void testCloseBeforeTheEnd() throws IOException {
+        Files.write(file, gzip(new byte[16 << 20], 0, 16 << 20));
+        InputStream in = new DecompressingInputStream(file);
+        assertEquals(0, in.read());
+        in.close();
+        in.close();
+    }
+
+    @Test
+    public final void testCompressedNames() {
+        assertTrue(DecompressingInputStream.isCompressed("transactions.csv.gz"));
+        assertTrue(DecompressingInputStream.isCompressed("TRANSACTIONS.CSV.GZ"));
+        assertFalse(DecompressingInputStream.isCompressed("transactions.csv"));
+        assertTrue(ValidatorUtil.isTransactionFileCSV("transactions.csv.gz"));
+        assertFalse(ValidatorUtil.isTransactionFileCSV("transactions.txt.gz"));
+        assertFalse(ValidatorUtil.isTransactionFileCSV(".gz"));
+    }
+
+    private static byte[] gzip(byte[] content, int offset, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content, offset, length);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.engine.BalanceAccumulator;
+
+/**
+ * Unit tests for {@link PartitionedDataset}
+ *
+ * @author sundeep
+ *
+ */
+public class PartitionedDatasetTest {
+
+    private static final String HEADER = "transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction\n";
+
+    private Path dir;
+    private Path day20;
+    private Path day21;
+    private Path day22;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("partitions");
+        day20 = write("transactions-2018-10-20.csv",
+                      "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT\n" +
+                      "TX10002, ACC334455, ACC998877, 20/10/2018 17:33:43, 10.50, PAYMENT\n");
+        day21 = write("transactions-20181021.csv",
+                      "TX10003, ACC998877, ACC778899, 21/10/2018 18:00:00, 5.00, PAYMENT\n");
+        // the reversal lands a day after the payment it cancels
+        day22 = write("transactions-2018-10-22.csv",
+                      "TX10004, ACC334455, ACC998877, 22/10/2018 09:00:00, 10.50, REVERSAL, TX10002\n");
+        write("notes.txt", "not a partition\n");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public final void testResolve() {
+        assertEquals(Arrays.asList(day20, day21, day22), PartitionedDataset.resolve(dir.toString()));
+        assertEquals(Arrays.asList(day20, day22), PartitionedDataset.resolve(dir + "/transactions-2018-10-2*.csv"));
+        assertEquals(Arrays.asList(day21), PartitionedDataset.resolve(day21.toString()));
+        assertTrue(PartitionedDataset.resolve(dir + "/missing-*.csv").isEmpty());
+        assertTrue(PartitionedDataset.resolve(dir.resolve("notes.txt").toString()).isEmpty());
+
+        assertTrue(PartitionedDataset.isDataset(dir.toString()));
+        assertTrue(PartitionedDataset.isDataset(dir + "/*.csv"));
+        assertFalse(PartitionedDataset.isDataset(day20.toString()));
+    }
+
+    @Test
+    public final void testPrune() {
+        assertEquals(TimestampCodec.toEpochSecond(LocalDateTime.of(2018, 10, 21, 0, 0)), PartitionedDataset.getDayStart(day21));
+        assertEquals(TimestampCodec.NONE, PartitionedDataset.getDayStart(Paths.get("transactions1.csv")));
+        assertEquals(TimestampCodec.NONE, PartitionedDataset.getDayStart(Paths.get("transactions-2018-13-45.csv")));
+
+        List<Path> partitions = PartitionedDataset.resolve(dir.toString());
+        long from = TimestampCodec.toEpochSecond(LocalDateTime.of(2018, 10, 20, 23, 59, 58));
+        assertEquals(partitions, PartitionedDataset.prune(partitions, from));
+        from = TimestampCodec.toEpochSecond(LocalDateTime.of(2018, 10, 20, 23, 59, 59));
+        assertEquals(Arrays.asList(day21, day22), PartitionedDataset.prune(partitions, from));
+        from = TimestampCodec.toEpochSecond(LocalDateTime.of(2018, 10, 23, 0, 0));
+        assertTrue(PartitionedDataset.prune(partitions, from).isEmpty());
+    }
+
+    @Test
+    public final void testReversalAcrossPartitions() throws IOException {
+        LocalDateTime from = LocalDateTime.of(2018, 10, 20, 12, 0);
+        LocalDateTime to = LocalDateTime.of(2018, 10, 20, 19, 0);
+        List<Path> partitions = PartitionedDataset.prune(PartitionedDataset.resolve(dir.toString()),
+                                                         TimestampCodec.toEpochSecond(from));
+        BalanceAccumulator balance = new ChunkedFileReader(2).read(partitions,
+                                                                    () -> new BalanceAccumulator("ACC334455", from, to),
+                                                                    BalanceAccumulator::merge);
+        assertEquals(4, balance.getRecordsSize());
+        assertEquals(-2500, balance.getRelativeBalance());
+        assertEquals(1, balance.getTxnsSize());
+    }
+
+    @Test
+    public final void testRowsOutsideTheDayWarned() throws IOException {
+        Path misdated = write("transactions-2018-10-23.csv",
+                              "TX10005, ACC334455, ACC998877, 23/10/2018 09:00:00, 1.00, PAYMENT\n" +
+                              "TX10006, ACC334455, ACC998877, 24/10/2018 00:00:00, 1.00, PAYMENT\n" +
+                              "TX10007, ACC334455, ACC998877, 22/10/2018 23:59:59, 1.00, PAYMENT\n");
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(console));
+        try {
+            BalanceAccumulator balance = new ChunkedFileReader(2).read(PartitionedDataset.resolve(dir.toString()),
+                                                                        () -> new BalanceAccumulator("ACC334455", 0, Long.MAX_VALUE),
+                                                                        BalanceAccumulator::merge);
+            assertEquals(7, balance.getRecordsSize());
+        } finally {
+            System.setOut(stdout);
+        }
+        String[] lines = console.toString().split(System.lineSeparator());
+        assertEquals(1, lines.length);
+        assertEquals("Warning: 2 rows of " + misdated + " were created on another day than the one in its name. " +
+                     "A query starting after that day leaves them out", lines[0]);
+    }
+
+    private Path write(String name, String rows) throws IOException {
+        return Files.write(dir.resolve(name), (HEADER + rows).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,191 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.meb.benchmark.TransactionGenerator;
+import com.meb.engine.AccountReport;
+import com.meb.engine.BalanceAccumulator;
+import com.meb.store.TransactionStore;
+import com.meb.vo.TransactionRecord;
+
+/**
+ * Unit tests for {@link Quarantine} and the lenient reading of malformed rows
+ *
+ * @author sundeep
+ *
+ */
+public class QuarantineTest {
+
+    private static final String HEADER = "transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction";
+
+    private Path file;
+    private Path clean;
+    private final StringWriter rejects = new StringWriter();
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("lenient", ".csv");
+        clean = Files.createTempFile("clean", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(clean);
+    }
+
+    @Test
+    public final void testMalformedRowsAreQuarantined() throws IOException {
+        Files.write(file, Arrays.asList(HEADER,
+                                        "TX1, ACC1, ACC2, 20/10/2018 12:47:55, 25.00, PAYMENT",
+                                        "TX2, ACC1, ACC2, 20/10/2018 12:47:55",
+                                        "",
+                                        "TX3, ACC1, ACC2, 32/10/2018 12:47:55, 25.00, PAYMENT",
+                                        "TX4, ACC1, ACC2, 20/10/2018 12:47:55, 2x5, PAYMENT",
+                                        "TX5, ACC1, ACC2, 20/10/2018 12:47:55, 1.00, REVERSAL",
+                                        "TX6, ACC2, ACC3, 20/10/2018 13:00:00, 5.00, PAYMENT"),
+                    Charset.defaultCharset());
+        Quarantine quarantine = new Quarantine(rejects, "rejects.csv", 1);
+        TransactionStore store = new TransactionStore();
+        TimestampCodec codec = new TimestampCodec();
+
+        assertEquals(2, InputIngester.streamLines(file.toString(), tokenizer -> InputIngester.addToStore(store, tokenizer, codec),
+                                                  quarantine));
+        assertEquals(2, store.size());
+        // the malformed rows intern no ids
+        assertEquals(3, store.getAccountIds().size());
+        assertEquals(4, quarantine.getErrors());
+
+        String[] lines = rejects.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(file + ", 3, Expected at least 6 fields; found 4, TX2, ACC1, ACC2, 20/10/2018 12:47:55", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith(file + ", 5, DateTimeParseException: "));
+        assertTrue(lines[2], lines[2].startsWith(file + ", 6, NumberFormatException"));
+        assertEquals(file + ", 7, Reversal without a related transaction, TX5, ACC1, ACC2, 20/10/2018 12:47:55, 1.00, REVERSAL",
+                     lines[3]);
+    }
+
+    @Test
+    public final void testChunksReportLineNumbers() throws IOException {
+        List<TransactionRecord> txns = new TransactionGenerator(10, 0.1, 5).generate(5000);
+        TransactionGenerator.writeCsv(clean, txns);
+        List<String> lines = new ArrayList<>(Files.readAllLines(clean, Charset.defaultCharset()));
+        List<Integer> malformed = Arrays.asList(2, 700, 701, 2500, 5001);
+        for (int line : malformed) {
+            lines.add(line - 1, "TX" + line + ", ACC1, ACC2, not a date, 1.00, PAYMENT");
+        }
+        Files.write(file, lines, Charset.defaultCharset());
+
+        long from = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(100));
+        long to = TimestampCodec.toEpochSecond(TransactionGenerator.START.plusMinutes(4000));
+        String accountId = TransactionGenerator.accountId(3);
+        Quarantine quarantine = new Quarantine(rejects, "rejects.csv", 0.01);
+        BalanceAccumulator lenient = new ChunkedFileReader(3, 16 * 1024, quarantine)
+                .read(file.toString(), () -> new BalanceAccumulator(accountId, from, to), BalanceAccumulator::merge);
+        BalanceAccumulator expected = new ChunkedFileReader(1)
+                .read(clean.toString(), () -> new BalanceAccumulator(accountId, from, to), BalanceAccumulator::merge);
+        assertEquals(expected.getRecordsSize(), lenient.getRecordsSize());
+        assertEquals(expected.getRelativeBalance(), lenient.getRelativeBalance());
+
+        List<String> written = new ArrayList<>();
+        for (String reject : rejects.toString().split("\n")) {
+            String[] fields = reject.split(", ");
+            written.add(fields[1]);
+            assertEquals("TX" + fields[1], fields[3]);
+        }
+        assertEquals(Arrays.asList("2", "700", "701", "2500", "5001"), written);
+    }
+
+    @Test
+    public final void testTooManyErrorsAbort() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (int i = 0; i < 100000; i++) {
+            lines.add("TX" + i + "; ACC1; ACC2; 20/10/2018 12:47:55; 25.00; PAYMENT");
+        }
+        Files.write(file, lines, Charset.defaultCharset());
+
+        Quarantine quarantine = new Quarantine(rejects, "rejects.csv", 0.01);
+        try {
+            InputIngester.streamTransactions(file.toString(), rec -> { });
+            fail("Reading should fail");
+        } catch (MalformedRowException e) {
+            // the default quarantine is strict
+            assertEquals("Malformed row in " + file + " at line 2 : Expected at least 6 fields, found 1", e.getMessage());
+        }
+        try {
+            new ChunkedFileReader(2, 64 * 1024).read(file.toString(), () -> new BalanceAccumulator("ACC1", 0, 1),
+                                                    BalanceAccumulator::merge);
+            fail("Reading should fail");
+        } catch (MalformedRowException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed row in " + file + " at line "));
+        }
+
+        try {
+            new ChunkedFileReader(2, 64 * 1024, quarantine).read(file.toString(), () -> new BalanceAccumulator("ACC1", 0, 1),
+                                                                 BalanceAccumulator::merge);
+            fail("Reading should be given up");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("More than 1.0% of the rows are malformed"));
+        }
+        assertTrue(String.valueOf(quarantine.getErrors()), quarantine.getErrors() < 20);
+        // rows of chunks after the first one given up have no line number
+        assertTrue(rejects.toString().split("\n").length <= quarantine.getErrors());
+    }
+
+    @Test
+    public final void testErrorRateTakenOfRowsRead() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (int i = 0; i < 100000; i++) {
+            // 0.5% of the rows, more than 10 of them before the first batch of rows is counted
+            lines.add(i % 200 == 0 ? "TX" + i + ", ACC1, ACC2, not a date, 1.00, PAYMENT"
+                                   : "TX" + i + ", ACC1, ACC2, 20/10/2018 12:47:55, 1.00, PAYMENT");
+        }
+        Files.write(file, lines, Charset.defaultCharset());
+
+        Quarantine quarantine = new Quarantine(rejects, "rejects.csv", 0.01);
+        assertEquals(99500, InputIngester.streamLines(file.toString(), tokenizer -> {
+            InputIngester.toTransactionRecord(tokenizer, new TimestampCodec());
+        }, quarantine));
+        assertEquals(500, quarantine.getErrors());
+
+        quarantine = new Quarantine(rejects, "rejects.csv", 0.01);
+        BalanceAccumulator lenient = new ChunkedFileReader(3, 64 * 1024, quarantine)
+                .read(file.toString(), () -> new BalanceAccumulator("ACC1", 0, Long.MAX_VALUE), BalanceAccumulator::merge);
+        assertEquals(99500, lenient.getRecordsSize());
+        assertEquals(500, quarantine.getErrors());
+    }
+
+    @Test
+    public final void testReportQuarantinesRowsOnce() throws IOException {
+        Files.write(file, Arrays.asList(HEADER,
+                                        "TX1, ACC1, ACC2, 20/10/2018 12:47:55, 25.00, PAYMENT",
+                                        "TX2, ACC1, ACC2, 20/10/2018 12:47:55",
+                                        "TX3, ACC2, ACC1, 20/10/2018 13:00:00, 5.00, PAYMENT"),
+                    Charset.defaultCharset());
+        Quarantine quarantine = new Quarantine(rejects, "rejects.csv", 1);
+        StringWriter report = new StringWriter();
+
+        // the report reads the file twice, the malformed row is written on the first read only
+        assertEquals(2, new AccountReport(2, 0, quarantine).write(Arrays.asList(file), 0, Long.MAX_VALUE, report));
+        assertEquals(1, quarantine.getErrors());
+        assertEquals(1, rejects.toString().split("\n").length);
+        assertTrue(report.toString(), report.toString().contains("ACC1, 5.00, 25.00, -20.00, 2"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TailFollower}
+ *
+ * @author sundeep
+ *
+ */
+public class TailFollowerTest {
+
+    private Path file;
+    private final List<String> txnIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("follow", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public final void testOnlyAppendedLinesAreRead() throws IOException {
+        TailFollower follower = new TailFollower(file.toString(), tokenizer -> txnIds.add(tokenizer.getString(0)));
+        assertEquals(0, follower.poll());
+
+        append("transactionId, fromAccountId, toAccountId, createdAt, amount, transactionType, relatedTransaction\n" +
+               "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT\n");
+        assertEquals(1, follower.poll());
+        assertEquals(0, follower.poll());
+
+        // a line is not read until its newline is written
+        append("\nTX10002, ACC334455, ACC998877, 20/10/2018 17:33:43, 10.50, PAYMENT\nTX10003, ACC998877, ACC778");
+        assertEquals(1, follower.poll());
+        append("899, 20/10/2018 18:00:00, 5.00, PAYMENT\n");
+        assertEquals(1, follower.poll());
+
+        assertEquals(Arrays.asList("TX10001", "TX10002", "TX10003"), txnIds);
+        assertEquals(Files.size(file), follower.getOffset());
+    }
+
+    @Test
+    public final void testLineLongerThanBuffer() throws IOException {
+        char[] id = new char[(1 << 20) + 10];
+        Arrays.fill(id, 'X');
+        append("header\n" + new String(id) + ", ACC1, ACC2, 20/10/2018 12:47:55, 25.00, PAYMENT\nTX2, ACC1, ACC2, , 1.00, PAYMENT\n");
+        TailFollower follower = new TailFollower(file.toString(), tokenizer -> txnIds.add(tokenizer.getString(0)));
+        assertEquals(2, follower.poll());
+        assertEquals(new String(id), txnIds.get(0));
+        assertEquals("TX2", txnIds.get(1));
+    }
+
+    @Test
+    public final void testFailedLineIsNotReadAgain() throws IOException {
+        append("header\nTX1\nTX2\nTX3\n");
+        TailFollower follower = new TailFollower(file.toString(), tokenizer -> {
+            if ("TX2".equals(tokenizer.getString(0))) {
+                throw new IllegalArgumentException("bad line");
+            }
+            txnIds.add(tokenizer.getString(0));
+        });
+        try {
+            follower.poll();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        follower.poll();
+        assertEquals(Arrays.asList("TX1", "TX3"), txnIds);
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(file, text.getBytes(), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,104 @@
+package com.meb.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TimestampCodec}
+ *
+ * @author sundeep
+ *
+ */
+public class TimestampCodecTest {
+
+    private static final String[] EDGE_CASES = { "31/02/2018 12:00:00", "29/02/2019 00:00:00", "29/02/2020 00:00:00",
+                                                 "29/02/1900 00:00:00", "29/02/2000 00:00:00", "31/04/2018 10:00:00",
+                                                 "24/10/2018 24:00:00", "31/12/2018 24:00:00", "01/01/0001 00:00:00",
+                                                 "31/12/9999 23:59:59", "01/01/1970 00:00:00", "28/02/1969 23:59:59" };
+
+    private static final String[] INVALID = { "", "2018-10-01", "32/01/2018 00:00:00", "00/01/2018 00:00:00",
+                                              "24/10/2018 23:60:00", "24/10/2018 23:59:60", "24/10/2018 25:00:00",
+                                              "24/10/2018 24:00:01", "1/10/2018 10:00:00", "01/10/18 10:00:00",
+                                              "01/10/12345 10:00:00", "01/10/0000 10:00:00", "01/13/2018 10:00:00",
+                                              "01/00/2018 10:00:00", "01/10/2018 10:00:00 ", " 01/10/2018 10:00:00",
+                                              "01/10/+2018 10:00:00", "01/10/2018T10:00:00", "01-10-2018 10:00:00",
+                                              "0a/10/2018 10:00:00", "01/10/2018 10:00", "01/10/2018 10:00:0:" };
+
+    @Test
+    public final void testEdgeCasesMatchFormatter() {
+        for (String text : EDGE_CASES) {
+            assertEquals(text, expected(text), TimestampCodec.parseEpochSecond(text));
+        }
+    }
+
+    @Test
+    public final void testRandomTimestampsMatchFormatter() {
+        Random random = new Random(3);
+        TimestampCodec codec = new TimestampCodec();
+        for (int i = 0; i < 20000; i++) {
+            String text = String.format("%02d/%02d/%04d %02d:%02d:%02d", 1 + random.nextInt(31), 1 + random.nextInt(12),
+                                        1 + random.nextInt(9999), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            assertEquals(text, expected(text), codec.parse(text, 0, text.length()));
+        }
+    }
+
+    @Test
+    public final void testCachedDate() {
+        TimestampCodec codec = new TimestampCodec();
+        String[] rows = { "20/10/2018 12:47:55", "20/10/2018 17:33:43", "21/10/2018 09:30:00", "21/10/2018 19:45:00",
+                          "20/10/2018 18:00:00", "31/04/2018 10:00:00", "30/04/2018 10:00:00" };
+        for (String text : rows) {
+            assertEquals(text, expected(text), codec.parse(text, 0, text.length()));
+        }
+    }
+
+    @Test
+    public final void testParseInsideLine() {
+        String line = "TX10001, ACC334455, ACC778899, 20/10/2018 12:47:55, 25.00, PAYMENT";
+        int from = line.indexOf("20/10");
+        assertEquals(expected("20/10/2018 12:47:55"), new TimestampCodec().parse(line, from, from + 19));
+    }
+
+    @Test
+    public final void testInvalidInputsAreRejectedLikeValidateDate() {
+        for (String text : INVALID) {
+            assertFalse(text, isValidWithFormatter(text));
+            assertFalse(text, TimestampCodec.isValid(text));
+            assertFalse(text, ValidatorUtil.validateDate(text, TimestampCodec.PATTERN));
+            try {
+                TimestampCodec.parseEpochSecond(text);
+                fail(text);
+            } catch (DateTimeParseException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public final void testEpochSecondRoundTrip() {
+        LocalDateTime dateTime = LocalDateTime.of(2018, 10, 20, 12, 47, 55);
+        assertEquals(dateTime, TimestampCodec.toLocalDateTime(TimestampCodec.toEpochSecond(dateTime)));
+        assertEquals(null, TimestampCodec.toLocalDateTime(TimestampCodec.toEpochSecond(null)));
+    }
+
+    private static long expected(String text) {
+        return LocalDateTime.parse(text, TimestampCodec.FORMATTER).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static boolean isValidWithFormatter(String text) {
+        try {
+            LocalDateTime.parse(text, TimestampCodec.FORMATTER);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        return true;
+    }
+}